@@ -45,12 +45,57 @@ export type CellScanData = {|
   altitude?: ?number,
   heading?: ?number,
   rssi?: ?number,
+  towerLatitude?: ?number,
+  towerLongitude?: ?number,
+  towerRange?: ?number,
+|};
+
+export type CellChangeType =
+  | 'servingCellChanged'
+  | 'neighborAdded'
+  | 'neighborRemoved'
+  | 'signalThresholdCrossed'
+  | '%future added value';
+
+export type CellChangeEvent = {|
+  type: CellChangeType,
+  timestamp: number,
+  cell?: ?CellScanData,
+  previousCell?: ?CellScanData,
+|};
+
+// Payload of CELL_CHANGE_EVENT, the changes found by one diff
+export type CellChangeEvents = Array<CellChangeEvent>;
+
+export type CellChangeOptions = {|
+  debounceMs?: ?number,
+  signalThresholds?: ?Array<number>,
+|};
+
+export type CellScanSnapshot = {|
+  restored: boolean,
+  timestamp: number,
+  age: number,
+  results: {[string]: CellScanData},
 |};
 
 export interface Spec extends TurboModule {
   ERROR_KEY: string;
+  // Emitted with a CellChangeEvents payload
+  CELL_CHANGE_EVENT: string;
+  ERROR_CODE_TOWER_DATABASE: string;
   getCellScanResults: () => {[string]: Object};
+  getLastKnownCellScanResults: () => {[string]: Object};
   stopCellScan: () => void;
+  openCellTowerDatabase: (
+    path: string,
+    overlayPaths: ?Array<string>,
+  ) => {[string]: Object};
+  closeCellTowerDatabase: () => void;
+  startCellChangeUpdates: (options: ?CellChangeOptions) => {[string]: Object};
+  stopCellChangeUpdates: () => void;
+  addListener: (eventName: string) => void;
+  removeListeners: (count: number) => void;
 }
 
 export default TurboModuleRegistry.getEnforcing<Spec>('CellScanResultsModule');
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * @flow strict-local
+ * @format
+ */
+
+'use strict';
+
+import * as TurboModuleRegistry from 'react-native/Libraries/TurboModule/TurboModuleRegistry';
+import {TurboModule} from 'react-native/Libraries/TurboModule/RCTExport';
+
+export type DriveTestOverflowPolicy =
+  | 'downsample'
+  | 'dropOldest'
+  | 'dropNewest'
+  | '%future added value';
+
+export type DriveTestRecordingOptions = {|
+  intervalMs?: ?number,
+  // Number of records, clamped to MAX_CAPACITY (a day of samples at the default interval)
+  capacity?: ?number,
+  overflowPolicy?: ?DriveTestOverflowPolicy,
+  highWatermark?: ?number,
+|};
+
+export type DriveTestRecords = {|
+  startTime: Array<number>,
+  endTime: Array<number>,
+  samples: Array<number>,
+  cellMin: Array<?number>,
+  cellMax: Array<?number>,
+  cellMean: Array<?number>,
+  cellCount: Array<number>,
+  wifiMin: Array<?number>,
+  wifiMax: Array<?number>,
+  wifiMean: Array<?number>,
+  wifiCount: Array<number>,
+  dropped: number,
+  remaining: number,
+|};
+
+export interface Spec extends TurboModule {
+  ERROR_KEY: string;
+  ERROR_CODE_PERMISSION: string;
+  ERROR_CODE_NOT_RECORDING: string;
+  BUFFER_HIGH_EVENT: string;
+  MAX_CAPACITY: number;
+  startRecording: (options: ?DriveTestRecordingOptions) => {[string]: Object};
+  stopRecording: () => {remaining: number};
+  flushRecording: (maxRecords: number) => {[string]: Object};
+  addListener: (eventName: string) => void;
+  removeListeners: (count: number) => void;
+}
+
+export default TurboModuleRegistry.getEnforcing<Spec>(
+  'DriveTestRecorderModule',
+);
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * @flow strict-local
+ * @format
+ */
+
+'use strict';
+
+import * as TurboModuleRegistry from 'react-native/Libraries/TurboModule/TurboModuleRegistry';
+import {TurboModule} from 'react-native/Libraries/TurboModule/RCTExport';
+
+export type RadioSnapshotOptions = {|
+  cellTimeoutMs?: ?number,
+  wifiTimeoutMs?: ?number,
+|};
+
+export type RadioSnapshot = {|
+  timestamp: number,
+  cell: {[string]: Object},
+  wifi: {[string]: Object},
+|};
+
+export interface Spec extends TurboModule {
+  ERROR_KEY: string;
+  // Other errors are the codes of CellScanModule and WiFiScanModule
+  ERROR_CODE_TIMEOUT: string;
+  getRadioSnapshot: (options: ?RadioSnapshotOptions) => RadioSnapshot;
+}
+
+export default TurboModuleRegistry.getEnforcing<Spec>('RadioSnapshotModule');
@@ -29,6 +29,39 @@ export type WiFiScanData = {|
   altitude?: ?number,
   heading?: ?number,
   rssi?: ?number,
+  rank?: ?number,
+|};
+
+export type WiFiScanOptions = {|
+  bands?: ?Array<string>,
+  channels?: ?Array<number>,
+  ssidPrefix?: ?string,
+  ssids?: ?Array<string>,
+  minRssi?: ?number,
+  limit?: ?number,
+  fields?: ?Array<$Keys<WiFiScanData>>,
+|};
+
+export type WiFiScanSnapshot = {|
+  restored: boolean,
+  timestamp: number,
+  age: number,
+  results: {[string]: WiFiScanData},
+|};
+
+export type WiFiChannelCongestionOptions = {|
+  decay?: ?number,
+  reset?: ?boolean,
+|};
+
+export type WiFiChannelCongestion = {|
+  channels: Array<number>,
+  // Per channel, between 0 (free) and 1 (saturated). A single full strength access point on a
+  // channel reads as about 0.63.
+  utilization: Array<number>,
+  recommended: {[band: string]: Array<number>},
+  // Microseconds since boot of the last scan folded in
+  timestamp: number,
 |};
 
 export interface Spec extends TurboModule {
@@ -38,10 +71,16 @@ export interface Spec extends TurboModule {
   ERROR_CODE_WIFI_MANAGER: string;
   ERROR_WIFI_MANAGER: string;
   ERROR_CODE_WIFI_DISABLED: string;
+  ERROR_CODE_NO_DATA: string;
   ERROR_WIFI_DISABLED: string;
   ERROR_FAILED_TO_SHOW_WIFI_SETTINGS: string;
   WIFI_SETTINGS_OPENED: string;
   getNetworkScanResults: () => {[string]: Object};
+  getLastKnownNetworkScanResults: () => {[string]: Object};
+  queryNetworkScanResults: (options: ?WiFiScanOptions) => {[string]: Object};
+  getChannelCongestion: (
+    options: ?WiFiChannelCongestionOptions,
+  ) => {[string]: Object};
   navigateToWiFiSettings: () => {result: string};
 }
 
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.telephony.CellInfo;
+import android.telephony.PhoneStateListener;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.fbc.signalscan.utils.CellInfoUtil;
+import com.fbc.signalscan.utils.OptionsUtil;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Listens to cell info updates pushed by the telephony stack and diffs successive cell lists, so
+ * only serving cell changes, neighbor additions/removals and signal threshold crossings are
+ * reported to JS.
+ */
+class CellChangeTracker {
+  private static final String TAG = "CellChangeTracker";
+
+  static final String CHANGE_SERVING_CELL = "servingCellChanged";
+  static final String CHANGE_NEIGHBOR_ADDED = "neighborAdded";
+  static final String CHANGE_NEIGHBOR_REMOVED = "neighborRemoved";
+  static final String CHANGE_SIGNAL_THRESHOLD = "signalThresholdCrossed";
+
+  private static final String OPTION_DEBOUNCE_MS = "debounceMs";
+  private static final String OPTION_SIGNAL_THRESHOLDS = "signalThresholds";
+  private static final int DEFAULT_DEBOUNCE_MS = 1000;
+
+  interface Listener {
+    /**
+     * Called once the subscription went through or failed.
+     *
+     * @param subscribed false if the telephony stack refused the subscription
+     */
+    void onStarted(boolean subscribed);
+
+    void onCellChanges(WritableArray changes);
+  }
+
+  private final TelephonyManager teleManager;
+  private final Listener listener;
+  // Cell info is read with binder calls, so the baseline, the diffs and the PhoneStateListener
+  // callbacks all run on a dedicated thread rather than on the main thread
+  private final HandlerThread thread = new HandlerThread(TAG);
+  private final Handler handler;
+  private final int debounceMs;
+  private final int[] signalThresholds;
+
+  @Nullable private PhoneStateListener phoneStateListener;
+  @Nullable private List<CellInfo> pendingCells;
+  private boolean processingPosted;
+  private Map<String, CellInfo> previousCells = new HashMap<>();
+  @Nullable private String previousServingKey;
+
+  private final Runnable processPendingCells =
+      new Runnable() {
+        @Override
+        public void run() {
+          List<CellInfo> cells = pendingCells;
+          pendingCells = null;
+          processingPosted = false;
+          if (cells == null) {
+            cells = CellInfoUtil.getAllCellInfoOrNull(teleManager);
+          } else {
+            cells = CellInfoUtil.filterCellsWithNullIds(cells);
+          }
+          WritableArray changes = diff(cells);
+          if (changes.size() > 0) {
+            listener.onCellChanges(changes);
+          }
+        }
+      };
+
+  CellChangeTracker(
+      TelephonyManager teleManager, @Nullable ReadableMap options, Listener listener) {
+    this.teleManager = teleManager;
+    this.listener = listener;
+    this.thread.start();
+    this.handler = new Handler(this.thread.getLooper());
+    this.debounceMs =
+        Math.max(0, OptionsUtil.getInt(options, OPTION_DEBOUNCE_MS, DEFAULT_DEBOUNCE_MS));
+    ReadableArray thresholds = OptionsUtil.getArray(options, OPTION_SIGNAL_THRESHOLDS);
+    if (thresholds != null) {
+      this.signalThresholds = new int[thresholds.size()];
+      for (int i = 0; i < thresholds.size(); i++) {
+        this.signalThresholds[i] = thresholds.getInt(i);
+      }
+    } else {
+      this.signalThresholds = new int[0];
+    }
+  }
+
+  /**
+   * Starts listening to cell info updates. The current cells are used as the baseline. The
+   * listener is told whether the subscription succeeded once it was actually made.
+   */
+  void start() {
+    handler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (phoneStateListener != null) {
+              listener.onStarted(true);
+              return;
+            }
+            diff(CellInfoUtil.getAllCellInfoOrNull(teleManager));
+            // PhoneStateListener delivers its callbacks on the looper it was created on
+            phoneStateListener =
+                new PhoneStateListener() {
+                  @Override
+                  public void onCellInfoChanged(@Nullable List<CellInfo> cellInfo) {
+                    // Updates keep coming while the signal level changes, so rather than waiting
+                    // for them to stop, the latest list is diffed at most debounceMs after the
+                    // first one
+                    pendingCells = cellInfo;
+                    if (!processingPosted) {
+                      processingPosted = true;
+                      handler.postDelayed(processPendingCells, debounceMs);
+                    }
+                  }
+                };
+            try {
+              teleManager.listen(phoneStateListener, PhoneStateListener.LISTEN_CELL_INFO);
+              Log.d(TAG, "listening to cell info changes");
+            } catch (SecurityException ex) {
+              Log.e(TAG, "SecurityException was caught", ex);
+              phoneStateListener = null;
+              thread.quit();
+              listener.onStarted(false);
+              return;
+            }
+            listener.onStarted(true);
+          }
+        });
+  }
+
+  /**
+   * Stops listening to cell info updates, drops any pending update and ends the tracker thread.
+   */
+  void stop() {
+    handler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            handler.removeCallbacks(processPendingCells);
+            pendingCells = null;
+            processingPosted = false;
+            if (phoneStateListener != null) {
+              teleManager.listen(phoneStateListener, PhoneStateListener.LISTEN_NONE);
+              phoneStateListener = null;
+              Log.d(TAG, "stopped listening to cell info changes");
+            }
+            thread.quit();
+          }
+        });
+  }
+
+  private WritableArray diff(@Nullable List<CellInfo> cells) {
+    WritableArray changes = Arguments.createArray();
+    Map<String, CellInfo> currentCells = new HashMap<>();
+    String servingKey = null;
+    if (cells != null) {
+      for (CellInfo cell : cells) {
+        String key = CellInfoUtil.getCellKey(cell);
+        currentCells.put(key, cell);
+        if (servingKey == null && cell.isRegistered()) {
+          servingKey = key;
+        }
+      }
+    }
+
+    if (servingKey == null ? previousServingKey != null : !servingKey.equals(previousServingKey)) {
+      WritableMap change = createChange(CHANGE_SERVING_CELL, currentCells.get(servingKey));
+      CellInfo previousServingCell =
+          previousServingKey != null ? previousCells.get(previousServingKey) : null;
+      if (previousServingCell != null) {
+        change.putMap("previousCell", CellScanResultsModule.encodeCellInfo(previousServingCell));
+      }
+      changes.pushMap(change);
+    }
+
+    for (Map.Entry<String, CellInfo> entry : currentCells.entrySet()) {
+      CellInfo previousCell = previousCells.get(entry.getKey());
+      if (previousCell == null) {
+        if (!entry.getKey().equals(servingKey)) {
+          changes.pushMap(createChange(CHANGE_NEIGHBOR_ADDED, entry.getValue()));
+        }
+      } else if (crossesThreshold(
+          CellInfoUtil.getDbm(previousCell), CellInfoUtil.getDbm(entry.getValue()))) {
+        changes.pushMap(createChange(CHANGE_SIGNAL_THRESHOLD, entry.getValue()));
+      }
+    }
+
+    for (Map.Entry<String, CellInfo> entry : previousCells.entrySet()) {
+      if (!currentCells.containsKey(entry.getKey())
+          && !entry.getKey().equals(previousServingKey)) {
+        changes.pushMap(createChange(CHANGE_NEIGHBOR_REMOVED, entry.getValue()));
+      }
+    }
+
+    previousCells = currentCells;
+    previousServingKey = servingKey;
+    return changes;
+  }
+
+  private boolean crossesThreshold(int previousDbm, int dbm) {
+    if (previousDbm == Integer.MAX_VALUE || dbm == Integer.MAX_VALUE) {
+      return false;
+    }
+    for (int threshold : signalThresholds) {
+      if ((previousDbm < threshold) != (dbm < threshold)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static WritableMap createChange(String type, @Nullable CellInfo cell) {
+    WritableMap change = Arguments.createMap();
+    change.putString("type", type);
+    change.putDouble("timestamp", System.currentTimeMillis());
+    if (cell != null) {
+      change.putMap("cell", CellScanResultsModule.encodeCellInfo(cell));
+    }
+    return change;
+  }
+}
@@ -43,10 +43,22 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.module.annotations.ReactModule;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.fbc.signalscan.events.TelephonyScanManangerExceptionEvent;
 import com.fbc.signalscan.utils.CellInfoUtil;
+import com.fbc.signalscan.utils.CellTowerDatabase;
+import com.fbc.signalscan.utils.SnapshotStore;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -79,23 +91,135 @@ public class CellScanResultsModule extends ReactContextBaseJavaModule {
   private static final String CELL_FIELD_EARFCN = "earfcn";
   private static final String CELL_FIELD_UARFCN = "uarfcn";
   private static final String CELL_FIELD_TIMING_ADVANCE = "timingAdvance";
+  private static final String CELL_FIELD_TOWER_LATITUDE = "towerLatitude";
+  private static final String CELL_FIELD_TOWER_LONGITUDE = "towerLongitude";
+  private static final String CELL_FIELD_TOWER_RANGE = "towerRange";
 
   private static final String ERROR_KEY = "error";
-  private static final String ERROR_CODE_PERMISSION = "errorPermission";
+  static final String ERROR_CODE_PERMISSION = "errorPermission";
   private static final String ERROR_PERMISSION = "READ_PHONE_STATE permission not granted";
-  private static final String ERROR_CODE_TELEPHONY_MANAGER = "errorTelephonyManager";
+  static final String ERROR_CODE_TELEPHONY_MANAGER = "errorTelephonyManager";
   private static final String ERROR_TELEPHONY_MANAGER = "Telephony manager is null";
-  private static final String ERROR_CODE_NO_DATA = "errorNoData";
+  static final String ERROR_CODE_NO_DATA = "errorNoData";
   private static final String ERROR_NO_DATA = "getCellLocation returned no results";
   private static final String ERROR_CODE_RUNTIME_EX = "errorRuntimeEx";
   private static final String ERROR_RUNTIME_EX = "runtime error exception was thrown";
+  private static final String ERROR_CODE_TOWER_DATABASE = "errorTowerDatabase";
+
+  private static final String SNAPSHOT_FILE_NAME = "cell_scan_snapshot.bin";
+
+  private static final String CELL_CHANGE_EVENT = "cellInfoChanged";
 
   // https://powerfulsignal.com/cell-signal-strength/
   private static final int MIN_SIGNAL_STRENGTH = -110;
 
+  // Fixed layout of the persisted cells: a bitmask of the fields present, then the value of each
+  // present field in this order
+  private static final String[] SNAPSHOT_STRING_FIELDS = {
+    CELL_FIELD_TYPE,
+    CELL_FIELD_ID,
+    CELL_FIELD_PCI,
+    CELL_FIELD_BASE_STATION_ID,
+    CELL_FIELD_NETWORK_ID,
+    CELL_FIELD_SYSTEM_ID,
+    CELL_FIELD_MCC,
+    CELL_FIELD_MNC,
+    CELL_FIELD_LAC,
+    CELL_FIELD_TAC,
+    CELL_FIELD_PSC
+  };
+  private static final String[] SNAPSHOT_INT_FIELDS = {
+    CELL_FIELD_DBM,
+    CELL_FIELD_ARFCN,
+    CELL_FIELD_EARFCN,
+    CELL_FIELD_UARFCN,
+    CELL_FIELD_TIMING_ADVANCE,
+    CELL_FIELD_TOWER_RANGE
+  };
+  private static final String[] SNAPSHOT_DOUBLE_FIELDS = {
+    CELL_FIELD_TOWER_LATITUDE, CELL_FIELD_TOWER_LONGITUDE
+  };
+
+  private static final SnapshotStore.RecordCodec<ReadableMap> SNAPSHOT_CODEC =
+      new SnapshotStore.RecordCodec<ReadableMap>() {
+        @Override
+        public int getLayout() {
+          return 1;
+        }
+
+        @Override
+        public void write(DataOutputStream out, ReadableMap cell) throws IOException {
+          int mask = 0;
+          int bit = 0;
+          for (String field : SNAPSHOT_STRING_FIELDS) {
+            mask |= cell.hasKey(field) && !cell.isNull(field) ? 1 << bit : 0;
+            bit++;
+          }
+          for (String field : SNAPSHOT_INT_FIELDS) {
+            mask |= cell.hasKey(field) ? 1 << bit : 0;
+            bit++;
+          }
+          for (String field : SNAPSHOT_DOUBLE_FIELDS) {
+            mask |= cell.hasKey(field) ? 1 << bit : 0;
+            bit++;
+          }
+          out.writeInt(mask);
+          bit = 0;
+          for (String field : SNAPSHOT_STRING_FIELDS) {
+            if ((mask & (1 << bit++)) != 0) {
+              out.writeUTF(cell.getString(field));
+            }
+          }
+          for (String field : SNAPSHOT_INT_FIELDS) {
+            if ((mask & (1 << bit++)) != 0) {
+              out.writeInt(cell.getInt(field));
+            }
+          }
+          for (String field : SNAPSHOT_DOUBLE_FIELDS) {
+            if ((mask & (1 << bit++)) != 0) {
+              out.writeDouble(cell.getDouble(field));
+            }
+          }
+        }
+
+        @Override
+        public ReadableMap read(DataInputStream in) throws IOException {
+          WritableMap cell = Arguments.createMap();
+          int mask = in.readInt();
+          int bit = 0;
+          for (String field : SNAPSHOT_STRING_FIELDS) {
+            if ((mask & (1 << bit++)) != 0) {
+              cell.putString(field, in.readUTF());
+            }
+          }
+          for (String field : SNAPSHOT_INT_FIELDS) {
+            if ((mask & (1 << bit++)) != 0) {
+              cell.putInt(field, in.readInt());
+            }
+          }
+          for (String field : SNAPSHOT_DOUBLE_FIELDS) {
+            if ((mask & (1 << bit++)) != 0) {
+              cell.putDouble(field, in.readDouble());
+            }
+          }
+          return cell;
+        }
+
+        @Override
+        public void put(WritableMap results, int index, ReadableMap cell) {
+          // Maps are consumed once resolved, so the snapshot hands out a copy
+          WritableMap fields = Arguments.createMap();
+          fields.merge(cell);
+          results.putMap(Integer.toString(index), fields);
+        }
+      };
+
   private ReactApplicationContext reactContext;
   private Promise mPromise;
   private NetworkScan mNetworkScan;
+  private CellChangeTracker mCellChangeTracker;
+  private final SnapshotStore<ReadableMap> mSnapshotStore;
+  @Nullable private volatile CellTowerDatabase mTowerDatabase;
 
   private Thread.UncaughtExceptionHandler handler =
       new Thread.UncaughtExceptionHandler() {
@@ -118,6 +242,9 @@ public class CellScanResultsModule extends ReactContextBaseJavaModule {
   CellScanResultsModule(ReactApplicationContext reactContext) {
     super(reactContext);
     this.reactContext = reactContext;
+    this.mSnapshotStore =
+        new SnapshotStore<>(
+            new File(reactContext.getFilesDir(), SNAPSHOT_FILE_NAME), SNAPSHOT_CODEC);
     Thread.setDefaultUncaughtExceptionHandler(handler);
     EventBus.getDefault().register(this);
   }
@@ -144,9 +271,161 @@ public class CellScanResultsModule extends ReactContextBaseJavaModule {
   public Map<String, Object> getConstants() {
     Map<String, Object> constants = new HashMap<>();
     constants.put("ERROR_KEY", ERROR_KEY);
+    constants.put("CELL_CHANGE_EVENT", CELL_CHANGE_EVENT);
+    constants.put("ERROR_CODE_TOWER_DATABASE", ERROR_CODE_TOWER_DATABASE);
     return constants;
   }
 
+  @Override
+  public void onCatalystInstanceDestroy() {
+    stopCellChangeUpdates();
+  }
+
+  @ReactMethod
+  public void addListener(String eventName) {
+    // Required by NativeEventEmitter, events are only emitted while cell change updates are on
+  }
+
+  @ReactMethod
+  public void removeListeners(double count) {
+    // Required by NativeEventEmitter
+  }
+
+  /**
+   * Subscribes to cell info changes pushed by the telephony stack. Successive cell lists are diffed
+   * natively and only the changes are emitted to JS as CELL_CHANGE_EVENT.
+   *
+   * @param options debounceMs and signalThresholds (dBm) options
+   * @param promise resolved with an empty map once subscribed, or with an error
+   */
+  @ReactMethod
+  public void startCellChangeUpdates(@Nullable ReadableMap options, Promise promise) {
+    Context context = reactContext.getApplicationContext();
+
+    if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE)
+            != PackageManager.PERMISSION_GRANTED
+        || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+            != PackageManager.PERMISSION_GRANTED) {
+      WritableMap map = Arguments.createMap();
+      map.putString(ERROR_KEY, ERROR_CODE_PERMISSION);
+      Log.d(TAG, ERROR_PERMISSION);
+      promise.resolve(map);
+      return;
+    }
+
+    TelephonyManager teleManager =
+        (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+
+    if (teleManager == null) {
+      WritableMap map = Arguments.createMap();
+      map.putString(ERROR_KEY, ERROR_CODE_TELEPHONY_MANAGER);
+      Log.d(TAG, ERROR_TELEPHONY_MANAGER);
+      promise.resolve(map);
+      return;
+    }
+
+    stopCellChangeUpdates();
+    final Promise startPromise = promise;
+    final CellChangeTracker[] tracker = new CellChangeTracker[1];
+    tracker[0] =
+        new CellChangeTracker(
+            teleManager,
+            options,
+            new CellChangeTracker.Listener() {
+              @Override
+              public void onStarted(boolean subscribed) {
+                if (subscribed) {
+                  startPromise.resolve(Arguments.createMap());
+                  return;
+                }
+                clearCellChangeTracker(tracker[0]);
+                WritableMap map = Arguments.createMap();
+                map.putString(ERROR_KEY, ERROR_CODE_PERMISSION);
+                Log.d(TAG, ERROR_PERMISSION);
+                startPromise.resolve(map);
+              }
+
+              @Override
+              public void onCellChanges(WritableArray changes) {
+                if (reactContext.hasActiveCatalystInstance()) {
+                  reactContext
+                      .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                      .emit(CELL_CHANGE_EVENT, changes);
+                }
+              }
+            });
+    // Started under the lock so a concurrent stop cannot end the tracker thread before start runs
+    synchronized (this) {
+      this.mCellChangeTracker = tracker[0];
+      tracker[0].start();
+    }
+  }
+
+  @ReactMethod
+  public synchronized void stopCellChangeUpdates() {
+    if (this.mCellChangeTracker != null) {
+      Log.d(TAG, "stopping cell change updates");
+      this.mCellChangeTracker.stop();
+      this.mCellChangeTracker = null;
+    }
+  }
+
+  // The tracker already stopped itself when its subscription failed
+  private synchronized void clearCellChangeTracker(CellChangeTracker tracker) {
+    if (this.mCellChangeTracker == tracker) {
+      this.mCellChangeTracker = null;
+    }
+  }
+
+  /**
+   * Memory-maps an offline cell tower database. While it is open, cells returned by
+   * getCellScanResults are annotated with the location and range of their tower.
+   *
+   * @param path path of the base database file
+   * @param overlayPaths paths of delta update files, oldest first
+   * @param promise resolved with an empty map once the database is open, or with an error
+   */
+  @ReactMethod
+  public void openCellTowerDatabase(
+      @Nullable String path, @Nullable ReadableArray overlayPaths, Promise promise) {
+    if (path == null) {
+      Log.d(TAG, "No cell tower database path was given");
+      resolveTowerDatabaseError(promise);
+      return;
+    }
+    List<File> overlayFiles = new ArrayList<>();
+    if (overlayPaths != null) {
+      for (int i = 0; i < overlayPaths.size(); i++) {
+        // Skipping an overlay would serve towers it deletes or moves, so the whole call fails
+        if (overlayPaths.getType(i) != ReadableType.String) {
+          Log.d(TAG, String.format("Invalid cell tower database overlay path at index %d", i));
+          resolveTowerDatabaseError(promise);
+          return;
+        }
+        overlayFiles.add(new File(overlayPaths.getString(i)));
+      }
+    }
+    try {
+      this.mTowerDatabase = CellTowerDatabase.open(new File(path), overlayFiles);
+    } catch (IOException ex) {
+      Log.e(TAG, "Failed to open cell tower database", ex);
+      resolveTowerDatabaseError(promise);
+      return;
+    }
+    promise.resolve(Arguments.createMap());
+  }
+
+  private static void resolveTowerDatabaseError(Promise promise) {
+    WritableMap map = Arguments.createMap();
+    map.putString(ERROR_KEY, ERROR_CODE_TOWER_DATABASE);
+    promise.resolve(map);
+  }
+
+  @ReactMethod
+  public void closeCellTowerDatabase() {
+    this.mTowerDatabase = null;
+  }
+
   @ReactMethod
   public void stopCellScan() {
     if (this.mNetworkScan != null) {
@@ -155,6 +434,25 @@ public class CellScanResultsModule extends ReactContextBaseJavaModule {
     }
   }
 
+  /**
+   * Gets the results of the last successful cell scan, restoring them from disk after a cold
+   * start. Meant to be called while getCellScanResults runs so something can be shown right away.
+   *
+   * @param promise resolved with the results, their timestamp, age and whether they were restored
+   *     from disk, or with ERROR_CODE_NO_DATA if no scan ever succeeded
+   */
+  @ReactMethod
+  public void getLastKnownCellScanResults(Promise promise) {
+    SnapshotStore.Snapshot<ReadableMap> snapshot = this.mSnapshotStore.get();
+    if (snapshot == null) {
+      WritableMap map = Arguments.createMap();
+      map.putString(ERROR_KEY, ERROR_CODE_NO_DATA);
+      promise.resolve(map);
+      return;
+    }
+    promise.resolve(snapshot.toWritableMap());
+  }
+
   @ReactMethod
   public void getCellScanResults(Promise promise) {
     this.mPromise = promise;
@@ -232,7 +530,7 @@ public class CellScanResultsModule extends ReactContextBaseJavaModule {
       public void onComplete() {
         Log.d(TAG, "network scan complete");
         WritableMap map = processCellScanResults(teleManager, this.cellList);
-        this.promise.resolve(map);
+        resolveCellScanResults(this.promise, map);
       }
     }
 
@@ -258,7 +556,19 @@ public class CellScanResultsModule extends ReactContextBaseJavaModule {
     List<CellInfo> cellList = CellInfoUtil.getAllCellInfoOrNull(teleManager);
 
     WritableMap map = processCellScanResults(teleManager, cellList);
-    this.mPromise.resolve(map);
+    resolveCellScanResults(this.mPromise, map);
+  }
+
+  private void resolveCellScanResults(Promise promise, WritableMap map) {
+    if (!map.hasKey(ERROR_KEY)) {
+      // The map is consumed once resolved, so the cells are read out before handing it to JS
+      List<ReadableMap> cells = new ArrayList<>();
+      for (int i = 0; map.hasKey(Integer.toString(i)); i++) {
+        cells.add(map.getMap(Integer.toString(i)));
+      }
+      this.mSnapshotStore.save(cells, System.currentTimeMillis());
+    }
+    promise.resolve(map);
   }
 
   private WritableMap processCellScanResults(
@@ -313,25 +623,16 @@ public class CellScanResultsModule extends ReactContextBaseJavaModule {
 
     Log.d(TAG, String.format("cell scan found %s cells", cellList.size()));
     int i = 0;
+    CellTowerDatabase towerDatabase = this.mTowerDatabase;
     for (CellInfo cell : cellList) {
-      WritableMap fields;
-      if (cell instanceof CellInfoCdma) {
-        Log.d(TAG, "cell is instance of CellInfoCdma");
-        fields = setCDMAInfo((CellInfoCdma) cell);
-      } else if (cell instanceof CellInfoGsm) {
-        Log.d(TAG, "cell is instance of CellInfoGsm");
-        fields = setGSMInfo((CellInfoGsm) cell);
-      } else if (cell instanceof CellInfoLte) {
-        Log.d(TAG, "cell is instance of CellInfoLte");
-        fields = setLTEInfo((CellInfoLte) cell);
-      } else if (cell instanceof CellInfoWcdma) {
-        Log.d(TAG, "cell is instance of CellInfoWcdma");
-        fields = setWCDMAInfo((CellInfoWcdma) cell);
-      } else {
-        fields = Arguments.createMap();
-        fields.putString(CELL_FIELD_TYPE, "UNKNOWN");
-        fields.merge(getDefaultValues());
-        Log.d(TAG, String.format("Unknown cell type: %s", cell.toString()));
+      WritableMap fields = encodeCellInfo(cell);
+      if (towerDatabase != null) {
+        CellTowerDatabase.Tower tower = towerDatabase.lookup(cell);
+        if (tower != null) {
+          fields.putDouble(CELL_FIELD_TOWER_LATITUDE, tower.latitude);
+          fields.putDouble(CELL_FIELD_TOWER_LONGITUDE, tower.longitude);
+          fields.putInt(CELL_FIELD_TOWER_RANGE, tower.range);
+        }
       }
       map.putMap(Integer.toString(i), fields);
       i++;
@@ -339,6 +640,29 @@ public class CellScanResultsModule extends ReactContextBaseJavaModule {
     return map;
   }
 
+  static WritableMap encodeCellInfo(CellInfo cell) {
+    WritableMap fields;
+    if (cell instanceof CellInfoCdma) {
+      Log.d(TAG, "cell is instance of CellInfoCdma");
+      fields = setCDMAInfo((CellInfoCdma) cell);
+    } else if (cell instanceof CellInfoGsm) {
+      Log.d(TAG, "cell is instance of CellInfoGsm");
+      fields = setGSMInfo((CellInfoGsm) cell);
+    } else if (cell instanceof CellInfoLte) {
+      Log.d(TAG, "cell is instance of CellInfoLte");
+      fields = setLTEInfo((CellInfoLte) cell);
+    } else if (cell instanceof CellInfoWcdma) {
+      Log.d(TAG, "cell is instance of CellInfoWcdma");
+      fields = setWCDMAInfo((CellInfoWcdma) cell);
+    } else {
+      fields = Arguments.createMap();
+      fields.putString(CELL_FIELD_TYPE, "UNKNOWN");
+      fields.merge(getDefaultValues());
+      Log.d(TAG, String.format("Unknown cell type: %s", cell.toString()));
+    }
+    return fields;
+  }
+
   private static WritableMap getDefaultValues() {
     WritableMap fields = Arguments.createMap();
     fields.putInt(CELL_FIELD_DBM, MIN_SIGNAL_STRENGTH);
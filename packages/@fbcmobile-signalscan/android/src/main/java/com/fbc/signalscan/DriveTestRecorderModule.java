@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.telephony.CellInfo;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+import androidx.core.content.ContextCompat;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.module.annotations.ReactModule;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.fbc.signalscan.utils.CellInfoUtil;
+import com.fbc.signalscan.utils.OptionsUtil;
+import com.fbc.signalscan.utils.SampleRingBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Records cell and Wi-Fi signal samples at a fixed rate into a preallocated ring buffer, so long
+ * drive tests have a fixed memory ceiling. JS pulls the recorded data with flushRecording and is
+ * notified with BUFFER_HIGH_EVENT when the buffer reaches its high watermark.
+ */
+@ReactModule(name = DriveTestRecorderModule.TAG)
+public class DriveTestRecorderModule extends ReactContextBaseJavaModule {
+  static final String TAG = "DriveTestRecorderModule";
+
+  private static final String OPTION_INTERVAL_MS = "intervalMs";
+  private static final String OPTION_CAPACITY = "capacity";
+  private static final String OPTION_OVERFLOW_POLICY = "overflowPolicy";
+  private static final String OPTION_HIGH_WATERMARK = "highWatermark";
+
+  private static final String POLICY_DOWNSAMPLE = "downsample";
+  private static final String POLICY_DROP_OLDEST = "dropOldest";
+  private static final String POLICY_DROP_NEWEST = "dropNewest";
+
+  private static final int DEFAULT_INTERVAL_MS = 1000;
+  private static final int MIN_INTERVAL_MS = 100;
+  private static final int DEFAULT_CAPACITY = 3600;
+  // A day of samples at the default interval, about 6MB of records
+  private static final int MAX_CAPACITY = 86400;
+  private static final double DEFAULT_HIGH_WATERMARK = 0.75;
+
+  private static final String BUFFER_HIGH_EVENT = "driveTestBufferHigh";
+
+  private static final String ERROR_KEY = "error";
+  private static final String ERROR_CODE_PERMISSION = "errorPermission";
+  private static final String ERROR_PERMISSION =
+      "READ_PHONE_STATE or ACCESS_FINE_LOCATION permission not granted";
+  private static final String ERROR_CODE_NOT_RECORDING = "errorNotRecording";
+  private static final String ERROR_NOT_RECORDING = "no recording session was started";
+
+  private ReactApplicationContext reactContext;
+  @Nullable private HandlerThread mSamplerThread;
+  @Nullable private Handler mSamplerHandler;
+  @Nullable private SampleRingBuffer mBuffer;
+  private int mHighWatermark;
+  private boolean mBufferHighNotified;
+
+  DriveTestRecorderModule(ReactApplicationContext reactContext) {
+    super(reactContext);
+    this.reactContext = reactContext;
+  }
+
+  @Nonnull
+  @Override
+  public String getName() {
+    return TAG;
+  }
+
+  @Nullable
+  @Override
+  public Map<String, Object> getConstants() {
+    Map<String, Object> constants = new HashMap<>();
+    constants.put("ERROR_KEY", ERROR_KEY);
+    constants.put("ERROR_CODE_PERMISSION", ERROR_CODE_PERMISSION);
+    constants.put("ERROR_CODE_NOT_RECORDING", ERROR_CODE_NOT_RECORDING);
+    constants.put("BUFFER_HIGH_EVENT", BUFFER_HIGH_EVENT);
+    constants.put("MAX_CAPACITY", MAX_CAPACITY);
+    return constants;
+  }
+
+  @Override
+  public void onCatalystInstanceDestroy() {
+    stopSampling();
+  }
+
+  @ReactMethod
+  public void addListener(String eventName) {
+    // Required by NativeEventEmitter
+  }
+
+  @ReactMethod
+  public void removeListeners(double count) {
+    // Required by NativeEventEmitter
+  }
+
+  /**
+   * Starts a recording session, dropping any data left from a previous one.
+   *
+   * @param options intervalMs, capacity (at most MAX_CAPACITY records), overflowPolicy (downsample,
+   *     dropOldest or dropNewest) and highWatermark (fraction of the capacity) options
+   * @param promise resolved with the session capacity, or with an error
+   */
+  @ReactMethod
+  public synchronized void startRecording(@Nullable ReadableMap options, Promise promise) {
+    Context context = reactContext.getApplicationContext();
+
+    if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE)
+            != PackageManager.PERMISSION_GRANTED
+        || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+            != PackageManager.PERMISSION_GRANTED) {
+      WritableMap map = Arguments.createMap();
+      map.putString(ERROR_KEY, ERROR_CODE_PERMISSION);
+      Log.d(TAG, ERROR_PERMISSION);
+      promise.resolve(map);
+      return;
+    }
+
+    stopSampling();
+
+    int capacity =
+        Math.min(MAX_CAPACITY, OptionsUtil.getInt(options, OPTION_CAPACITY, DEFAULT_CAPACITY));
+    int intervalMs =
+        Math.max(
+            MIN_INTERVAL_MS, OptionsUtil.getInt(options, OPTION_INTERVAL_MS, DEFAULT_INTERVAL_MS));
+    this.mBuffer = new SampleRingBuffer(capacity, getOverflowPolicy(options));
+    double highWatermark =
+        OptionsUtil.getDouble(options, OPTION_HIGH_WATERMARK, DEFAULT_HIGH_WATERMARK);
+    this.mHighWatermark =
+        Math.max(1, (int) Math.ceil(this.mBuffer.capacity() * Math.min(1, highWatermark)));
+    this.mBufferHighNotified = false;
+
+    this.mSamplerThread = new HandlerThread(TAG);
+    this.mSamplerThread.start();
+    this.mSamplerHandler = new Handler(this.mSamplerThread.getLooper());
+    this.mSamplerHandler.post(new Sampler(this.mSamplerHandler, this.mBuffer, intervalMs));
+    Log.d(
+        TAG,
+        String.format(
+            "recording every %d ms into %d records", intervalMs, this.mBuffer.capacity()));
+
+    WritableMap map = Arguments.createMap();
+    map.putInt("capacity", this.mBuffer.capacity());
+    promise.resolve(map);
+  }
+
+  /**
+   * Stops sampling. Recorded data stays available to flushRecording until the next session.
+   *
+   * @param promise resolved with the number of records left to flush
+   */
+  @ReactMethod
+  public synchronized void stopRecording(Promise promise) {
+    stopSampling();
+    WritableMap map = Arguments.createMap();
+    map.putInt("remaining", this.mBuffer != null ? this.mBuffer.size() : 0);
+    promise.resolve(map);
+  }
+
+  /**
+   * Removes the oldest recorded records from the buffer and returns them column by column.
+   *
+   * @param maxRecords maximum number of records to return, all of them if not positive
+   * @param promise resolved with the records, or with ERROR_CODE_NOT_RECORDING
+   */
+  @ReactMethod
+  public synchronized void flushRecording(int maxRecords, Promise promise) {
+    if (this.mBuffer == null) {
+      WritableMap map = Arguments.createMap();
+      map.putString(ERROR_KEY, ERROR_CODE_NOT_RECORDING);
+      Log.d(TAG, ERROR_NOT_RECORDING);
+      promise.resolve(map);
+      return;
+    }
+    WritableMap map = this.mBuffer.flush(maxRecords);
+    this.mBufferHighNotified = false;
+    promise.resolve(map);
+  }
+
+  private synchronized void stopSampling() {
+    if (this.mSamplerThread != null) {
+      Log.d(TAG, "stopping recording");
+      this.mSamplerHandler.removeCallbacksAndMessages(null);
+      this.mSamplerThread.quit();
+      this.mSamplerThread = null;
+      this.mSamplerHandler = null;
+    }
+  }
+
+  private synchronized void onSampleRecorded(SampleRingBuffer buffer) {
+    if (buffer != this.mBuffer || this.mBufferHighNotified || buffer.size() < mHighWatermark) {
+      return;
+    }
+    this.mBufferHighNotified = true;
+    if (reactContext.hasActiveCatalystInstance()) {
+      WritableMap event = Arguments.createMap();
+      event.putInt("size", buffer.size());
+      event.putInt("capacity", buffer.capacity());
+      reactContext
+          .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+          .emit(BUFFER_HIGH_EVENT, event);
+    }
+  }
+
+  private class Sampler implements Runnable {
+    private final Handler handler;
+    private final SampleRingBuffer buffer;
+    private final int intervalMs;
+    @Nullable private final TelephonyManager teleManager;
+    @Nullable private final WifiManager wifiManager;
+
+    Sampler(Handler handler, SampleRingBuffer buffer, int intervalMs) {
+      Context context = reactContext.getApplicationContext();
+      this.handler = handler;
+      this.buffer = buffer;
+      this.intervalMs = intervalMs;
+      this.teleManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+      this.wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+    }
+
+    @Override
+    public void run() {
+      long start = System.currentTimeMillis();
+
+      int cellDbm = SampleRingBuffer.NO_VALUE;
+      int cellCount = 0;
+      List<CellInfo> cellList =
+          teleManager != null ? CellInfoUtil.getAllCellInfoOrNull(teleManager) : null;
+      if (cellList != null) {
+        cellCount = cellList.size();
+        for (CellInfo cell : cellList) {
+          int dbm = CellInfoUtil.getDbm(cell);
+          if (cell.isRegistered() && dbm != Integer.MAX_VALUE) {
+            cellDbm = dbm;
+            break;
+          }
+        }
+      }
+
+      int wifiRssi = SampleRingBuffer.NO_VALUE;
+      int wifiCount = 0;
+      if (wifiManager != null && wifiManager.isWifiEnabled()) {
+        try {
+          List<ScanResult> wifiList = wifiManager.getScanResults();
+          wifiCount = wifiList.size();
+          for (ScanResult scanResult : wifiList) {
+            if (wifiRssi == SampleRingBuffer.NO_VALUE || scanResult.level > wifiRssi) {
+              wifiRssi = scanResult.level;
+            }
+          }
+        } catch (SecurityException ex) {
+          Log.e(TAG, "SecurityException was caught", ex);
+        }
+      }
+
+      buffer.add(start, cellDbm, cellCount, wifiRssi, wifiCount);
+      onSampleRecorded(buffer);
+
+      long elapsed = System.currentTimeMillis() - start;
+      handler.postDelayed(this, Math.max(0, intervalMs - elapsed));
+    }
+  }
+
+  private static int getOverflowPolicy(@Nullable ReadableMap options) {
+    String policy = OptionsUtil.getString(options, OPTION_OVERFLOW_POLICY);
+    if (POLICY_DROP_OLDEST.equals(policy)) {
+      return SampleRingBuffer.POLICY_DROP_OLDEST;
+    }
+    if (POLICY_DROP_NEWEST.equals(policy)) {
+      return SampleRingBuffer.POLICY_DROP_NEWEST;
+    }
+    return SampleRingBuffer.POLICY_DOWNSAMPLE;
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.CellInfo;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+import androidx.core.content.ContextCompat;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.module.annotations.ReactModule;
+import com.fbc.signalscan.utils.CellInfoUtil;
+import com.fbc.signalscan.utils.OptionsUtil;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Captures cell and Wi-Fi scan results in parallel and resolves them in a single payload sharing
+ * one capture timestamp. Each source has its own timeout so a slow one does not hold back the
+ * other.
+ */
+@ReactModule(name = RadioSnapshotModule.TAG)
+public class RadioSnapshotModule extends ReactContextBaseJavaModule {
+  static final String TAG = "RadioSnapshotModule";
+
+  private static final String SOURCE_CELL = "cell";
+  private static final String SOURCE_WIFI = "wifi";
+
+  private static final String OPTION_CELL_TIMEOUT_MS = "cellTimeoutMs";
+  private static final String OPTION_WIFI_TIMEOUT_MS = "wifiTimeoutMs";
+  private static final int DEFAULT_TIMEOUT_MS = 5000;
+
+  // Sources that fail report the error codes of CellScanResultsModule and WiFiScanResultsModule
+  private static final String ERROR_KEY = "error";
+  private static final String ERROR_CODE_TIMEOUT = "errorTimeout";
+
+  private ReactApplicationContext reactContext;
+  private final Handler timeoutHandler = new Handler(Looper.getMainLooper());
+
+  RadioSnapshotModule(ReactApplicationContext reactContext) {
+    super(reactContext);
+    this.reactContext = reactContext;
+  }
+
+  @Nonnull
+  @Override
+  public String getName() {
+    return TAG;
+  }
+
+  @Nullable
+  @Override
+  public Map<String, Object> getConstants() {
+    Map<String, Object> constants = new HashMap<>();
+    constants.put("ERROR_KEY", ERROR_KEY);
+    constants.put("ERROR_CODE_TIMEOUT", ERROR_CODE_TIMEOUT);
+    return constants;
+  }
+
+  /**
+   * Captures cell and Wi-Fi scan results in parallel.
+   *
+   * @param options cellTimeoutMs and wifiTimeoutMs options
+   * @param promise resolved with the capture timestamp and the cell and wifi results, each of which
+   *     holds an error instead when that source failed, with the code getCellScanResults or
+   *     getNetworkScanResults would have returned, or timed out
+   */
+  @ReactMethod
+  public void getRadioSnapshot(@Nullable ReadableMap options, Promise promise) {
+    final Context context = reactContext.getApplicationContext();
+    final PendingSnapshot snapshot = new PendingSnapshot(System.currentTimeMillis(), 2, promise);
+
+    snapshot.start(
+        SOURCE_CELL, OptionsUtil.getInt(options, OPTION_CELL_TIMEOUT_MS, DEFAULT_TIMEOUT_MS));
+    snapshot.start(
+        SOURCE_WIFI, OptionsUtil.getInt(options, OPTION_WIFI_TIMEOUT_MS, DEFAULT_TIMEOUT_MS));
+
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            snapshot.complete(SOURCE_CELL, captureCells(context));
+          }
+        });
+    AsyncTask.THREAD_POOL_EXECUTOR.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            snapshot.complete(SOURCE_WIFI, captureWifi(context));
+          }
+        });
+  }
+
+  private static WritableMap captureCells(Context context) {
+    if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE)
+        != PackageManager.PERMISSION_GRANTED) {
+      return createError(CellScanResultsModule.ERROR_CODE_PERMISSION);
+    }
+    TelephonyManager teleManager =
+        (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+    if (teleManager == null) {
+      return createError(CellScanResultsModule.ERROR_CODE_TELEPHONY_MANAGER);
+    }
+    List<CellInfo> cellList = CellInfoUtil.getAllCellInfoOrNull(teleManager);
+    if (cellList == null || cellList.isEmpty()) {
+      return createError(CellScanResultsModule.ERROR_CODE_NO_DATA);
+    }
+    WritableMap map = Arguments.createMap();
+    int i = 0;
+    for (CellInfo cell : cellList) {
+      map.putMap(Integer.toString(i), CellScanResultsModule.encodeCellInfo(cell));
+      i++;
+    }
+    return map;
+  }
+
+  private static WritableMap captureWifi(Context context) {
+    WritableMap error = Arguments.createMap();
+    WifiManager wifiManager = WiFiScanResultsModule.getEnabledWifiManager(context, error);
+    if (wifiManager == null) {
+      return error;
+    }
+    WritableMap map = Arguments.createMap();
+    for (ScanResult scanResult : wifiManager.getScanResults()) {
+      map.putMap(
+          scanResult.BSSID,
+          WiFiScanResultsModule.encodeScanResult(scanResult, WiFiScanQuery.ALL));
+    }
+    return map;
+  }
+
+  private static WritableMap createError(String code) {
+    WritableMap map = Arguments.createMap();
+    map.putString(ERROR_KEY, code);
+    return map;
+  }
+
+  /** Collects the result of each source and resolves the promise once all of them are in. */
+  private class PendingSnapshot {
+    private final long timestamp;
+    private final Promise promise;
+    private final Map<String, WritableMap> results = new HashMap<>();
+    private final Map<String, Runnable> timeouts = new HashMap<>();
+    private int pending;
+
+    PendingSnapshot(long timestamp, int sources, Promise promise) {
+      this.timestamp = timestamp;
+      this.pending = sources;
+      this.promise = promise;
+    }
+
+    synchronized void start(final String source, int timeoutMs) {
+      Runnable timeout =
+          new Runnable() {
+            @Override
+            public void run() {
+              Log.d(TAG, String.format("%s capture timed out", source));
+              complete(source, createError(ERROR_CODE_TIMEOUT));
+            }
+          };
+      timeouts.put(source, timeout);
+      timeoutHandler.postDelayed(timeout, Math.max(0, timeoutMs));
+    }
+
+    synchronized void complete(String source, WritableMap result) {
+      if (results.containsKey(source)) {
+        // Already timed out, or completed before its timeout fired
+        return;
+      }
+      timeoutHandler.removeCallbacks(timeouts.get(source));
+      results.put(source, result);
+      pending--;
+      if (pending > 0) {
+        return;
+      }
+      WritableMap map = Arguments.createMap();
+      map.putDouble("timestamp", timestamp);
+      for (Map.Entry<String, WritableMap> entry : results.entrySet()) {
+        map.putMap(entry.getKey(), entry.getValue());
+      }
+      promise.resolve(map);
+    }
+  }
+}
@@ -70,7 +70,10 @@ public class SignalScanPackage implements ReactPackage {
   @Override
   public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
     return Arrays.<NativeModule>asList(
-        new CellScanResultsModule(reactContext), new WiFiScanResultsModule(reactContext));
+        new CellScanResultsModule(reactContext),
+        new WiFiScanResultsModule(reactContext),
+        new DriveTestRecorderModule(reactContext),
+        new RadioSnapshotModule(reactContext));
   }
 
   @Override
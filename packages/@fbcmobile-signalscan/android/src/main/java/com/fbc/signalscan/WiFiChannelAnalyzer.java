@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan;
+
+import android.net.wifi.ScanResult;
+import android.os.Build;
+import android.os.SystemClock;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Maps the bandwidth occupied by each access point, including 40/80/160 MHz bonded channels, onto
+ * per-channel occupancy scores. Scores are smoothed across scans with an exponential decay, so a
+ * single scan missing an access point does not make its channel look free.
+ *
+ * <p>Occupancy adds up the overlap of every access point weighted by its signal strength, so one
+ * full strength 20MHz access point on a channel counts as 1. It is reported as a utilization of
+ * 1 - exp(-occupancy), between 0 and 1, which keeps the channel ranking.
+ */
+class WiFiChannelAnalyzer {
+  // Channel numbers go up to 196 in the 5GHz band
+  private static final int MAX_CHANNEL = 196;
+  private static final int CHANNEL_WIDTH_MHZ = 20;
+  private static final int HIGH_2_DOT_4GHZ = 2484;
+  private static final int LOW_5GHZ = 5000;
+
+  // Signal strengths are weighted linearly between these levels
+  private static final int WEAKEST_LEVEL = -100;
+  private static final int STRONGEST_LEVEL = -30;
+
+  // Android throttles foreground apps to 4 scans every 2 minutes, so an empty list is not taken as
+  // a new scan more often than that
+  private static final long EMPTY_SCAN_INTERVAL_US = 30 * 1000 * 1000;
+
+  private static final int[] CHANNELS_2_DOT_4GHZ = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13};
+  // Non-overlapping 2.4GHz channels, the only ones worth recommending
+  private static final int[] RECOMMENDED_CHANNELS_2_DOT_4GHZ = {1, 6, 11};
+  private static final int[] CHANNELS_5GHZ = {
+    36, 40, 44, 48, 52, 56, 60, 64, 100, 104, 108, 112, 116, 120, 124, 128, 132, 136, 140, 144, 149,
+    153, 157, 161, 165
+  };
+
+  private final double[] occupancy = new double[MAX_CHANNEL + 1];
+  private final double[] scanOccupancy = new double[MAX_CHANNEL + 1];
+  // Newest scan result folded in, in microseconds since boot like ScanResult.timestamp
+  private long lastScanTimestamp = -1;
+  // Last empty list folded in, on the same clock. Kept apart so it never holds back a real scan
+  private long lastEmptyTimestamp = -1;
+  private boolean hasScores;
+
+  /**
+   * Folds the scan results into the occupancy scores. Results that were already analyzed, as
+   * returned again by WifiManager when no new scan happened, are not counted twice. An empty list
+   * is a scan that found nothing, folded in at most once per EMPTY_SCAN_INTERVAL_US however often
+   * it is polled.
+   *
+   * @param scanResults results returned by the WifiManager
+   * @param decay weight of the previous scores, between 0 (only this scan counts) and 1
+   */
+  synchronized void update(List<ScanResult> scanResults, double decay) {
+    Arrays.fill(scanOccupancy, 0);
+    if (scanResults.isEmpty()) {
+      long now = SystemClock.elapsedRealtime() * 1000;
+      if (lastEmptyTimestamp >= 0 && now - lastEmptyTimestamp < EMPTY_SCAN_INTERVAL_US) {
+        return;
+      }
+      lastEmptyTimestamp = now;
+    } else {
+      long newestTimestamp = lastScanTimestamp;
+      for (ScanResult scanResult : scanResults) {
+        newestTimestamp = Math.max(newestTimestamp, scanResult.timestamp);
+      }
+      if (newestTimestamp <= lastScanTimestamp) {
+        return;
+      }
+      lastScanTimestamp = newestTimestamp;
+      for (ScanResult scanResult : scanResults) {
+        addScanResult(scanResult);
+      }
+    }
+
+    double weight = hasScores ? Math.max(0, Math.min(1, decay)) : 0;
+    hasScores = true;
+    for (int channel = 0; channel <= MAX_CHANNEL; channel++) {
+      occupancy[channel] = occupancy[channel] * weight + scanOccupancy[channel] * (1 - weight);
+    }
+  }
+
+  synchronized void reset() {
+    Arrays.fill(occupancy, 0);
+    lastScanTimestamp = -1;
+    lastEmptyTimestamp = -1;
+    hasScores = false;
+  }
+
+  /**
+   * Encodes the per-channel utilization scores and the recommended channels for JS.
+   *
+   * @return a map with parallel channel and utilization (between 0 and 1) arrays and, per band,
+   *     the recommended channels from least to most congested
+   */
+  synchronized WritableMap toWritableMap() {
+    WritableArray channels = Arguments.createArray();
+    WritableArray utilization = Arguments.createArray();
+    for (int channel : CHANNELS_2_DOT_4GHZ) {
+      channels.pushInt(channel);
+      utilization.pushDouble(getUtilization(channel));
+    }
+    for (int channel : CHANNELS_5GHZ) {
+      channels.pushInt(channel);
+      utilization.pushDouble(getUtilization(channel));
+    }
+
+    WritableMap recommended = Arguments.createMap();
+    recommended.putArray("2.4GHz", rank(RECOMMENDED_CHANNELS_2_DOT_4GHZ));
+    recommended.putArray("5GHz", rank(CHANNELS_5GHZ));
+
+    WritableMap map = Arguments.createMap();
+    map.putArray("channels", channels);
+    map.putArray("utilization", utilization);
+    map.putMap("recommended", recommended);
+    map.putDouble("timestamp", Math.max(lastScanTimestamp, lastEmptyTimestamp));
+    return map;
+  }
+
+  private double getUtilization(int channel) {
+    return 1 - Math.exp(-occupancy[channel]);
+  }
+
+  private WritableArray rank(int[] candidates) {
+    List<Integer> ranked = new ArrayList<>(candidates.length);
+    for (int channel : candidates) {
+      ranked.add(channel);
+    }
+    Collections.sort(
+        ranked,
+        new Comparator<Integer>() {
+          @Override
+          public int compare(Integer a, Integer b) {
+            return Double.compare(occupancy[a], occupancy[b]);
+          }
+        });
+    WritableArray array = Arguments.createArray();
+    for (int channel : ranked) {
+      array.pushInt(channel);
+    }
+    return array;
+  }
+
+  private void addScanResult(ScanResult scanResult) {
+    double weight =
+        Math.max(
+            0,
+            Math.min(
+                1,
+                (double) (scanResult.level - WEAKEST_LEVEL) / (STRONGEST_LEVEL - WEAKEST_LEVEL)));
+    if (weight == 0) {
+      return;
+    }
+
+    int widthMhz = CHANNEL_WIDTH_MHZ;
+    int centerFrequency = scanResult.frequency;
+    int secondCenterFrequency = 0;
+    if (Build.VERSION.SDK_INT >= 23) {
+      switch (scanResult.channelWidth) {
+        case ScanResult.CHANNEL_WIDTH_40MHZ:
+          widthMhz = 40;
+          break;
+        case ScanResult.CHANNEL_WIDTH_80MHZ:
+          widthMhz = 80;
+          break;
+        case ScanResult.CHANNEL_WIDTH_160MHZ:
+          widthMhz = 160;
+          break;
+        case ScanResult.CHANNEL_WIDTH_80MHZ_PLUS_MHZ:
+          widthMhz = 80;
+          secondCenterFrequency = scanResult.centerFreq1;
+          break;
+        default:
+          break;
+      }
+      if (widthMhz > CHANNEL_WIDTH_MHZ && scanResult.centerFreq0 > 0) {
+        centerFrequency = scanResult.centerFreq0;
+      }
+    }
+
+    addBandwidth(centerFrequency, widthMhz, weight);
+    if (secondCenterFrequency > 0) {
+      addBandwidth(secondCenterFrequency, widthMhz, weight);
+    }
+  }
+
+  /** Adds weight to every channel overlapping the band, in proportion to the overlap. */
+  private void addBandwidth(int centerFrequency, int widthMhz, double weight) {
+    if (centerFrequency > HIGH_2_DOT_4GHZ && centerFrequency < LOW_5GHZ) {
+      // Only the 2.4GHz and 5GHz bands are analyzed
+      return;
+    }
+    int low = centerFrequency - widthMhz / 2;
+    int high = centerFrequency + widthMhz / 2;
+    // Channels are 5MHz apart, so only the few channels whose 20MHz overlap the band are visited
+    int firstChannel =
+        WiFiScanResultsModule.getChannelFromFrequency(low - CHANNEL_WIDTH_MHZ / 2 + 5);
+    int lastChannel =
+        WiFiScanResultsModule.getChannelFromFrequency(high + CHANNEL_WIDTH_MHZ / 2 - 5);
+    if (centerFrequency < LOW_5GHZ) {
+      // Clamp to the edges of the 2.4GHz band, whose channels run from 1 to 14
+      firstChannel = Math.max(1, firstChannel);
+      lastChannel = lastChannel > 0 ? Math.min(14, lastChannel) : 14;
+    } else if (firstChannel <= 0 || lastChannel <= 0) {
+      int channel = WiFiScanResultsModule.getChannelFromFrequency(centerFrequency);
+      if (channel <= 0) {
+        return;
+      }
+      firstChannel = firstChannel > 0 ? firstChannel : channel;
+      lastChannel = lastChannel > 0 ? lastChannel : channel;
+    }
+    for (int channel = Math.max(1, firstChannel);
+        channel <= Math.min(MAX_CHANNEL, lastChannel);
+        channel++) {
+      int channelFrequency = getFrequencyFromChannel(channel, centerFrequency);
+      int overlap =
+          Math.min(high, channelFrequency + CHANNEL_WIDTH_MHZ / 2)
+              - Math.max(low, channelFrequency - CHANNEL_WIDTH_MHZ / 2);
+      if (overlap > 0) {
+        scanOccupancy[channel] += weight * overlap / CHANNEL_WIDTH_MHZ;
+      }
+    }
+  }
+
+  // Inverse of WiFiScanResultsModule.getChannelFromFrequency, the band being the one of the
+  // reference frequency
+  private static int getFrequencyFromChannel(int channel, int referenceFrequency) {
+    if (referenceFrequency < LOW_5GHZ) {
+      return channel == 14 ? HIGH_2_DOT_4GHZ : 2407 + channel * 5;
+    }
+    return 5000 + channel * 5;
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan;
+
+import android.net.wifi.ScanResult;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.fbc.signalscan.utils.OptionsUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Filter, top-K and projection options for Wi-Fi scan results. The query is evaluated natively so
+ * only the access points and fields requested by JS are encoded and sent over the bridge.
+ */
+class WiFiScanQuery {
+  private static final String OPTION_BANDS = "bands";
+  private static final String OPTION_CHANNELS = "channels";
+  private static final String OPTION_SSID_PREFIX = "ssidPrefix";
+  private static final String OPTION_SSIDS = "ssids";
+  private static final String OPTION_MIN_RSSI = "minRssi";
+  private static final String OPTION_LIMIT = "limit";
+  private static final String OPTION_FIELDS = "fields";
+
+  private static final Comparator<ScanResult> BY_LEVEL =
+      new Comparator<ScanResult>() {
+        @Override
+        public int compare(ScanResult a, ScanResult b) {
+          return Integer.compare(a.level, b.level);
+        }
+      };
+
+  /** Query that keeps every scan result and every field. */
+  static final WiFiScanQuery ALL = new WiFiScanQuery(null, null, null, null, null, 0, null);
+
+  @Nullable private final Set<String> bands;
+  @Nullable private final Set<Integer> channels;
+  @Nullable private final String ssidPrefix;
+  @Nullable private final Set<String> ssids;
+  @Nullable private final Integer minRssi;
+  private final int limit;
+  @Nullable private final Set<String> fields;
+
+  private WiFiScanQuery(
+      @Nullable Set<String> bands,
+      @Nullable Set<Integer> channels,
+      @Nullable String ssidPrefix,
+      @Nullable Set<String> ssids,
+      @Nullable Integer minRssi,
+      int limit,
+      @Nullable Set<String> fields) {
+    this.bands = bands;
+    this.channels = channels;
+    this.ssidPrefix = ssidPrefix;
+    this.ssids = ssids;
+    this.minRssi = minRssi;
+    this.limit = limit;
+    this.fields = fields;
+  }
+
+  /**
+   * Builds a query from the options passed by JS. Missing or null options do not filter anything.
+   *
+   * @param options options map, may be null
+   * @return the parsed query
+   */
+  static WiFiScanQuery fromOptions(@Nullable ReadableMap options) {
+    if (options == null) {
+      return ALL;
+    }
+    return new WiFiScanQuery(
+        getStringSet(options, OPTION_BANDS),
+        getIntSet(options, OPTION_CHANNELS),
+        OptionsUtil.getString(options, OPTION_SSID_PREFIX),
+        getStringSet(options, OPTION_SSIDS),
+        OptionsUtil.hasValue(options, OPTION_MIN_RSSI) ? options.getInt(OPTION_MIN_RSSI) : null,
+        Math.max(0, OptionsUtil.getInt(options, OPTION_LIMIT, 0)),
+        getStringSet(options, OPTION_FIELDS));
+  }
+
+  /**
+   * Whether a field should be written to the result map.
+   *
+   * @param field name of the field as seen by JS
+   * @return true when no projection was requested or the field is part of it
+   */
+  boolean includes(String field) {
+    return fields == null || fields.contains(field);
+  }
+
+  /**
+   * Whether results are limited to the strongest ones, in which case their order matters.
+   *
+   * @return true when a limit was requested
+   */
+  boolean isRanked() {
+    return limit > 0;
+  }
+
+  /**
+   * Applies the filters and the top-K limit. When a limit is set, only the strongest results are
+   * kept using a min-heap bounded to the limit, and they are returned strongest first so callers
+   * can tag each one with its rank.
+   *
+   * @param scanResults results returned by the WifiManager
+   * @return the matching results
+   */
+  List<ScanResult> apply(List<ScanResult> scanResults) {
+    if (limit <= 0) {
+      List<ScanResult> matches = new ArrayList<>(scanResults.size());
+      for (ScanResult scanResult : scanResults) {
+        if (matches(scanResult)) {
+          matches.add(scanResult);
+        }
+      }
+      return matches;
+    }
+
+    // The limit comes from JS, so the heap is sized by the results it can actually hold
+    PriorityQueue<ScanResult> heap =
+        new PriorityQueue<>(Math.max(1, Math.min(limit, scanResults.size())), BY_LEVEL);
+    for (ScanResult scanResult : scanResults) {
+      if (!matches(scanResult)) {
+        continue;
+      }
+      if (heap.size() < limit) {
+        heap.add(scanResult);
+      } else if (scanResult.level > heap.peek().level) {
+        heap.poll();
+        heap.add(scanResult);
+      }
+    }
+    List<ScanResult> top = new ArrayList<>(heap);
+    Collections.sort(top, Collections.reverseOrder(BY_LEVEL));
+    return top;
+  }
+
+  private boolean matches(ScanResult scanResult) {
+    if (minRssi != null && scanResult.level < minRssi) {
+      return false;
+    }
+    if (bands != null
+        && !bands.contains(WiFiScanResultsModule.getBandFromFrequency(scanResult.frequency))) {
+      return false;
+    }
+    if (channels != null
+        && !channels.contains(
+            WiFiScanResultsModule.getChannelFromFrequency(scanResult.frequency))) {
+      return false;
+    }
+    String ssid = scanResult.SSID != null ? scanResult.SSID : "";
+    if (ssidPrefix != null && !ssid.startsWith(ssidPrefix)) {
+      return false;
+    }
+    if (ssids != null && !ssids.contains(ssid)) {
+      return false;
+    }
+    return true;
+  }
+
+  @Nullable
+  private static Set<String> getStringSet(ReadableMap options, String key) {
+    ReadableArray array = OptionsUtil.getArray(options, key);
+    if (array == null) {
+      return null;
+    }
+    Set<String> values = new HashSet<>(array.size());
+    for (int i = 0; i < array.size(); i++) {
+      if (array.getType(i) == ReadableType.String) {
+        values.add(array.getString(i));
+      }
+    }
+    return values;
+  }
+
+  @Nullable
+  private static Set<Integer> getIntSet(ReadableMap options, String key) {
+    ReadableArray array = OptionsUtil.getArray(options, key);
+    if (array == null) {
+      return null;
+    }
+    Set<Integer> values = new HashSet<>(array.size());
+    for (int i = 0; i < array.size(); i++) {
+      if (array.getType(i) == ReadableType.Number) {
+        values.add(array.getInt(i));
+      }
+    }
+    return values;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan;
+
+import android.net.wifi.ScanResult;
+import android.os.Build;
+import com.facebook.react.bridge.WritableMap;
+import com.fbc.signalscan.utils.SnapshotStore;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import javax.annotation.Nullable;
+
+/**
+ * The fields of a ScanResult that are sent to JS. ScanResult cannot be rebuilt from its fields, so
+ * snapshots restored from disk are made of these.
+ */
+class WiFiScanRecord {
+  /** Channel width of results scanned before API 23, which is not sent to JS. */
+  static final int NO_CHANNEL_WIDTH = -1;
+
+  /** Record layout: SSID, BSSID, capabilities, frequency, level, channel width and timestamp. */
+  static final SnapshotStore.RecordCodec<WiFiScanRecord> CODEC =
+      new SnapshotStore.RecordCodec<WiFiScanRecord>() {
+        @Override
+        public int getLayout() {
+          return 1;
+        }
+
+        @Override
+        public void write(DataOutputStream out, WiFiScanRecord record) throws IOException {
+          writeString(out, record.ssid);
+          writeString(out, record.bssid);
+          writeString(out, record.capabilities);
+          out.writeInt(record.frequency);
+          out.writeInt(record.level);
+          out.writeInt(record.channelWidth);
+          out.writeLong(record.timestamp);
+        }
+
+        @Override
+        public WiFiScanRecord read(DataInputStream in) throws IOException {
+          return new WiFiScanRecord(
+              readString(in),
+              readString(in),
+              readString(in),
+              in.readInt(),
+              in.readInt(),
+              in.readInt(),
+              in.readLong());
+        }
+
+        @Override
+        public void put(WritableMap results, int index, WiFiScanRecord record) {
+          results.putMap(
+              record.bssid, WiFiScanResultsModule.encodeScanRecord(record, WiFiScanQuery.ALL));
+        }
+      };
+
+  @Nullable final String ssid;
+  @Nullable final String bssid;
+  @Nullable final String capabilities;
+  final int frequency;
+  final int level;
+  final int channelWidth;
+  final long timestamp;
+
+  WiFiScanRecord(ScanResult scanResult) {
+    this(
+        scanResult.SSID,
+        scanResult.BSSID,
+        scanResult.capabilities,
+        scanResult.frequency,
+        scanResult.level,
+        // Need API 23 for channelWidth
+        Build.VERSION.SDK_INT >= 23 ? scanResult.channelWidth : NO_CHANNEL_WIDTH,
+        scanResult.timestamp);
+  }
+
+  private WiFiScanRecord(
+      @Nullable String ssid,
+      @Nullable String bssid,
+      @Nullable String capabilities,
+      int frequency,
+      int level,
+      int channelWidth,
+      long timestamp) {
+    this.ssid = ssid;
+    this.bssid = bssid;
+    this.capabilities = capabilities;
+    this.frequency = frequency;
+    this.level = level;
+    this.channelWidth = channelWidth;
+    this.timestamp = timestamp;
+  }
+
+  private static void writeString(DataOutputStream out, @Nullable String value)
+      throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  @Nullable
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
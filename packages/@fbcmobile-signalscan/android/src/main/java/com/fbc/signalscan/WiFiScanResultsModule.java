@@ -15,6 +15,7 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiManager;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 import androidx.core.content.ContextCompat;
@@ -23,8 +24,13 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.module.annotations.ReactModule;
+import com.fbc.signalscan.utils.OptionsUtil;
+import com.fbc.signalscan.utils.SnapshotStore;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -56,12 +62,27 @@ public class WiFiScanResultsModule extends ReactContextBaseJavaModule {
   private static final String ERROR_FAILED_TO_SHOW_WIFI_SETTINGS =
       "error_failed_to_show_wifi_settings";
   private static final String WIFI_SETTINGS_OPENED = "wifi_settings_opened";
+  private static final String ERROR_CODE_NO_DATA = "error_no_data";
+  private static final String ERROR_NO_DATA = "No Wi-Fi scan results were saved yet";
+
+  private static final String SNAPSHOT_FILE_NAME = "wifi_scan_snapshot.bin";
+
+  private static final String OPTION_DECAY = "decay";
+  private static final String OPTION_RESET = "reset";
+  private static final double DEFAULT_DECAY = 0.5;
 
   private ReactApplicationContext reactContext;
+  private final SnapshotStore<WiFiScanRecord> mSnapshotStore;
+  // Newest scan result in the snapshot, as WifiManager returns the same results until a new scan
+  private long mSnapshotScanTimestamp = -1;
+  private final WiFiChannelAnalyzer mChannelAnalyzer = new WiFiChannelAnalyzer();
 
   WiFiScanResultsModule(ReactApplicationContext reactContext) {
     super(reactContext);
     this.reactContext = reactContext;
+    this.mSnapshotStore =
+        new SnapshotStore<>(
+            new File(reactContext.getFilesDir(), SNAPSHOT_FILE_NAME), WiFiScanRecord.CODEC);
   }
 
   @Nonnull
@@ -78,6 +99,7 @@ public class WiFiScanResultsModule extends ReactContextBaseJavaModule {
     constants.put("ERROR_CODE_PERMISSION", ERROR_CODE_PERMISSION);
     constants.put("ERROR_CODE_WIFI_MANAGER", ERROR_CODE_WIFI_MANAGER);
     constants.put("ERROR_CODE_WIFI_DISABLED", ERROR_CODE_WIFI_DISABLED);
+    constants.put("ERROR_CODE_NO_DATA", ERROR_CODE_NO_DATA);
     constants.put("ERROR_FAILED_TO_SHOW_WIFI_SETTINGS", ERROR_FAILED_TO_SHOW_WIFI_SETTINGS);
     constants.put("WIFI_SETTINGS_OPENED", WIFI_SETTINGS_OPENED);
     return constants;
@@ -85,54 +107,190 @@ public class WiFiScanResultsModule extends ReactContextBaseJavaModule {
 
   @ReactMethod
   public void getNetworkScanResults(Promise promise) {
-    Context context = reactContext.getApplicationContext();
+    resolveNetworkScanResults(WiFiScanQuery.ALL, promise);
+  }
+
+  /**
+   * Gets the results of the last successful Wi-Fi scan, restoring them from disk after a cold
+   * start. Meant to be called while getNetworkScanResults runs so something can be shown right
+   * away.
+   *
+   * @param promise resolved with the results, their timestamp, age and whether they were restored
+   *     from disk, or with ERROR_CODE_NO_DATA if no scan ever succeeded
+   */
+  @ReactMethod
+  public void getLastKnownNetworkScanResults(Promise promise) {
+    SnapshotStore.Snapshot<WiFiScanRecord> snapshot = mSnapshotStore.get();
+    if (snapshot == null) {
+      WritableMap map = Arguments.createMap();
+      map.putString(ERROR_KEY, ERROR_CODE_NO_DATA);
+      promise.resolve(map);
+      Log.d(TAG, ERROR_NO_DATA);
+      return;
+    }
+    promise.resolve(snapshot.toWritableMap());
+  }
+
+  /**
+   * Same as getNetworkScanResults but filters, limits and projects the scan results natively
+   * before they are encoded, so only what JS asks for crosses the bridge.
+   *
+   * @param options bands, channels, ssidPrefix, ssids, minRssi, limit and fields options
+   * @param promise resolved with the matching scan results keyed by BSSID
+   */
+  @ReactMethod
+  public void queryNetworkScanResults(@Nullable ReadableMap options, Promise promise) {
+    resolveNetworkScanResults(WiFiScanQuery.fromOptions(options), promise);
+  }
+
+  /**
+   * Folds the latest scan results into the per-channel occupancy scores, decayed across scans, and
+   * returns the utilization of each channel along with the least congested channels per band.
+   *
+   * @param options decay (weight of previous scans, 0.5 by default) and reset options
+   * @param promise resolved with channels, utilization and recommended, or with an error
+   */
+  @ReactMethod
+  public void getChannelCongestion(@Nullable ReadableMap options, Promise promise) {
+    WifiManager wifiManager = getEnabledWifiManagerOrResolve(promise);
+    if (wifiManager == null) {
+      return;
+    }
+    if (OptionsUtil.getBoolean(options, OPTION_RESET, false)) {
+      mChannelAnalyzer.reset();
+    }
+    double decay = OptionsUtil.getDouble(options, OPTION_DECAY, DEFAULT_DECAY);
+    mChannelAnalyzer.update(wifiManager.getScanResults(), decay);
+    promise.resolve(mChannelAnalyzer.toWritableMap());
+  }
+
+  private void resolveNetworkScanResults(WiFiScanQuery query, Promise promise) {
+    WifiManager wifiManager = getEnabledWifiManagerOrResolve(promise);
+    if (wifiManager == null) {
+      return;
+    }
+
+    List<ScanResult> scanResults = wifiManager.getScanResults();
+    saveSnapshot(scanResults);
 
     // Prepare Writable Map for ScanResults
     WritableMap map = Arguments.createMap();
+    List<ScanResult> wifiList = query.apply(scanResults);
+    for (int i = 0; i < wifiList.size(); i++) {
+      ScanResult scanResult = wifiList.get(i);
+      WritableMap fields = encodeScanResult(scanResult, query);
+      if (query.isRanked()) {
+        // Maps are unordered once they cross the bridge, so the top-K order is sent explicitly
+        fields.putInt("rank", i);
+      }
+      map.putMap(scanResult.BSSID, fields);
+    }
+    promise.resolve(map);
+  }
 
+  /**
+   * Persists the full scan results, whatever the query, unless they are the ones already saved.
+   */
+  private synchronized void saveSnapshot(List<ScanResult> scanResults) {
+    long newestTimestamp = -1;
+    for (ScanResult scanResult : scanResults) {
+      newestTimestamp = Math.max(newestTimestamp, scanResult.timestamp);
+    }
+    if (scanResults.isEmpty() || newestTimestamp <= mSnapshotScanTimestamp) {
+      return;
+    }
+    mSnapshotScanTimestamp = newestTimestamp;
+    List<WiFiScanRecord> records = new ArrayList<>(scanResults.size());
+    for (ScanResult scanResult : scanResults) {
+      records.add(new WiFiScanRecord(scanResult));
+    }
+    // ScanResult.timestamp is in microseconds since boot
+    long capturedAt =
+        System.currentTimeMillis() - (SystemClock.elapsedRealtime() - newestTimestamp / 1000);
+    mSnapshotStore.save(records, capturedAt);
+  }
+
+  /**
+   * Gets the WifiManager once permissions are granted and Wi-Fi is enabled.
+   *
+   * @return the WifiManager or null if the promise was resolved with an error
+   */
+  @Nullable
+  private WifiManager getEnabledWifiManagerOrResolve(Promise promise) {
+    WritableMap map = Arguments.createMap();
+    WifiManager wifiManager = getEnabledWifiManager(reactContext.getApplicationContext(), map);
+    if (wifiManager == null) {
+      promise.resolve(map);
+    }
+    return wifiManager;
+  }
+
+  /**
+   * Gets the WifiManager once permissions are granted and Wi-Fi is enabled. Shared with the modules
+   * reading Wi-Fi scan results so they report the same error codes.
+   *
+   * @param error map the error code is put in when the WifiManager cannot be used
+   * @return the WifiManager or null if the error was set
+   */
+  @Nullable
+  static WifiManager getEnabledWifiManager(Context context, WritableMap error) {
     if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
         != PackageManager.PERMISSION_GRANTED) {
-      map.putString(ERROR_KEY, ERROR_CODE_PERMISSION);
-      promise.resolve(map);
+      error.putString(ERROR_KEY, ERROR_CODE_PERMISSION);
       Log.d(TAG, ERROR_PERMISSION);
-      return;
+      return null;
     }
 
     WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
     if (wifiManager == null) {
-      map.putString(ERROR_KEY, ERROR_CODE_WIFI_MANAGER);
-      promise.resolve(map);
+      error.putString(ERROR_KEY, ERROR_CODE_WIFI_MANAGER);
       Log.d(TAG, ERROR_WIFI_MANAGER);
-      return;
+      return null;
     }
 
     if (!wifiManager.isWifiEnabled()) {
-      map.putString(ERROR_KEY, ERROR_CODE_WIFI_DISABLED);
-      promise.resolve(map);
+      error.putString(ERROR_KEY, ERROR_CODE_WIFI_DISABLED);
       Log.d(TAG, ERROR_WIFI_DISABLED);
-      return;
+      return null;
     }
+    return wifiManager;
+  }
 
-    // Level of a Scan Result
-    List<ScanResult> wifiList = wifiManager.getScanResults();
-    for (ScanResult scanResult : wifiList) {
-      WritableMap fields = Arguments.createMap();
-      int level = WifiManager.calculateSignalLevel(scanResult.level, 5);
-      fields.putString("ssid", scanResult.SSID);
-      fields.putInt("strength", level);
-      fields.putString("bssid", scanResult.BSSID);
-      fields.putString("capabilities", scanResult.capabilities);
-      fields.putInt("frequency", scanResult.frequency);
-      fields.putInt("channel", getChannelFromFrequency(scanResult.frequency));
-      fields.putString("band", getBandFromFrequency(scanResult.frequency));
-      // Need API 23 for channelWidth
-      if (android.os.Build.VERSION.SDK_INT >= 23) {
-        fields.putInt("channelWidth", scanResult.channelWidth);
-      }
-      fields.putDouble("timestamp", scanResult.timestamp);
-      map.putMap(scanResult.BSSID, fields);
+  static WritableMap encodeScanResult(ScanResult scanResult, WiFiScanQuery query) {
+    return encodeScanRecord(new WiFiScanRecord(scanResult), query);
+  }
+
+  static WritableMap encodeScanRecord(WiFiScanRecord record, WiFiScanQuery query) {
+    WritableMap fields = Arguments.createMap();
+    if (query.includes("ssid")) {
+      fields.putString("ssid", record.ssid);
     }
-    promise.resolve(map);
+    if (query.includes("strength")) {
+      // Level of a Scan Result
+      fields.putInt("strength", WifiManager.calculateSignalLevel(record.level, 5));
+    }
+    if (query.includes("bssid")) {
+      fields.putString("bssid", record.bssid);
+    }
+    if (query.includes("capabilities")) {
+      fields.putString("capabilities", record.capabilities);
+    }
+    if (query.includes("frequency")) {
+      fields.putInt("frequency", record.frequency);
+    }
+    if (query.includes("channel")) {
+      fields.putInt("channel", getChannelFromFrequency(record.frequency));
+    }
+    if (query.includes("band")) {
+      fields.putString("band", getBandFromFrequency(record.frequency));
+    }
+    if (record.channelWidth != WiFiScanRecord.NO_CHANNEL_WIDTH && query.includes("channelWidth")) {
+      fields.putInt("channelWidth", record.channelWidth);
+    }
+    if (query.includes("timestamp")) {
+      fields.putDouble("timestamp", record.timestamp);
+    }
+    return fields;
   }
 
   @ReactMethod
@@ -151,7 +309,7 @@ public class WiFiScanResultsModule extends ReactContextBaseJavaModule {
     }
   }
 
-  private static String getBandFromFrequency(int frequency) {
+  static String getBandFromFrequency(int frequency) {
     if (frequency >= LOW_2_DOT_4GHZ && frequency <= HIGH_2_DOT_4GHZ) {
       return "2.4GHz";
     }
@@ -169,7 +327,7 @@ public class WiFiScanResultsModule extends ReactContextBaseJavaModule {
   }
 
   // Using the 802.11--2012 standard
-  private static int getChannelFromFrequency(int frequency) {
+  static int getChannelFromFrequency(int frequency) {
     // Hardcode channel 14 to 2482 which is designated for Japan
     if (frequency == HIGH_2_DOT_4GHZ) {
       return 14;
@@ -41,13 +41,56 @@ public class CellInfoUtil {
     }
   }
 
+  /**
+   * Builds a key that identifies a cell across scans, independently of its signal strength.
+   *
+   * @param cell cell info
+   * @return the network type followed by the identity fields of the cell
+   */
+  public static String getCellKey(CellInfo cell) {
+    if (cell instanceof CellInfoCdma) {
+      CellIdentityCdma id = ((CellInfoCdma) cell).getCellIdentity();
+      return "CDMA:" + id.getSystemId() + ":" + id.getNetworkId() + ":" + id.getBasestationId();
+    } else if (cell instanceof CellInfoGsm) {
+      CellIdentityGsm id = ((CellInfoGsm) cell).getCellIdentity();
+      return "GSM:" + id.getMcc() + ":" + id.getMnc() + ":" + id.getLac() + ":" + id.getCid();
+    } else if (cell instanceof CellInfoLte) {
+      CellIdentityLte id = ((CellInfoLte) cell).getCellIdentity();
+      return "LTE:" + id.getMcc() + ":" + id.getMnc() + ":" + id.getTac() + ":" + id.getCi();
+    } else if (cell instanceof CellInfoWcdma) {
+      CellIdentityWcdma id = ((CellInfoWcdma) cell).getCellIdentity();
+      return "WCDMA:" + id.getMcc() + ":" + id.getMnc() + ":" + id.getLac() + ":" + id.getCid();
+    }
+    return "UNKNOWN:" + cell.toString();
+  }
+
+  /**
+   * Gets the signal strength of a cell.
+   *
+   * @param cell cell info
+   * @return the signal strength in dBm or Integer.MAX_VALUE if it is unknown
+   */
+  public static int getDbm(CellInfo cell) {
+    if (cell instanceof CellInfoCdma) {
+      return ((CellInfoCdma) cell).getCellSignalStrength().getDbm();
+    } else if (cell instanceof CellInfoGsm) {
+      return ((CellInfoGsm) cell).getCellSignalStrength().getDbm();
+    } else if (cell instanceof CellInfoLte) {
+      return ((CellInfoLte) cell).getCellSignalStrength().getDbm();
+    } else if (cell instanceof CellInfoWcdma) {
+      return ((CellInfoWcdma) cell).getCellSignalStrength().getDbm();
+    }
+    return Integer.MAX_VALUE;
+  }
+
   /**
    * Filter out cell infos with invalid Cell IDs.
    *
    * @param cellScanList list of cell info
    * @return filtered cell infos
    */
-  private static List<CellInfo> filterCellsWithNullIds(List<CellInfo> cellScanList) {
+  @Nullable
+  public static List<CellInfo> filterCellsWithNullIds(List<CellInfo> cellScanList) {
     if (cellScanList == null) {
       Log.d(TAG, "cellScanList was null");
       return null;
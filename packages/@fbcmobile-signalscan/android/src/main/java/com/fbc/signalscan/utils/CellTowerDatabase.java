@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan.utils;
+
+import android.telephony.CellIdentityCdma;
+import android.telephony.CellIdentityGsm;
+import android.telephony.CellIdentityLte;
+import android.telephony.CellIdentityWcdma;
+import android.telephony.CellInfo;
+import android.telephony.CellInfoCdma;
+import android.telephony.CellInfoGsm;
+import android.telephony.CellInfoLte;
+import android.telephony.CellInfoWcdma;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Offline cell tower location lookup backed by memory-mapped files, so datasets of hundreds of MB
+ * are paged in by the OS on demand instead of being loaded on the heap.
+ *
+ * <p>A database file is a 16 byte header (magic, version, record size and record count as big
+ * endian ints) followed by fixed-width records sorted by key. Each record holds the packed cell key
+ * (long), the tower latitude and longitude in 1e-7 degrees (ints) and its range in meters (int).
+ * Overlay files use the same format and take precedence over the base file and older overlays. An
+ * overlay record with a negative range deletes the tower.
+ */
+public class CellTowerDatabase {
+  private static final int MAGIC = 0x46424354; // "FBCT"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int RECORD_SIZE = 20;
+
+  private static final int OFFSET_LATITUDE = 8;
+  private static final int OFFSET_LONGITUDE = 12;
+  private static final int OFFSET_RANGE = 16;
+
+  private static final double COORDINATE_SCALE = 1e7;
+
+  public static final int RADIO_GSM = 0;
+  public static final int RADIO_WCDMA = 1;
+  public static final int RADIO_LTE = 2;
+  public static final int RADIO_CDMA = 3;
+
+  /** Key returned for cells that cannot be looked up. */
+  public static final long NO_KEY = -1;
+
+  /** Location of a tower. */
+  public static class Tower {
+    public final double latitude;
+    public final double longitude;
+    public final int range;
+
+    Tower(double latitude, double longitude, int range) {
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.range = range;
+    }
+  }
+
+  private static class TowerFile {
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    TowerFile(MappedByteBuffer buffer, int count) {
+      this.buffer = buffer;
+      this.count = count;
+    }
+
+    long keyAt(int index) {
+      return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    /**
+     * Finds a key with interpolation search, which takes a couple of probes on keys spread evenly
+     * enough. Whenever an interpolated probe does not halve the range, the next probe bisects it so
+     * the worst case stays logarithmic.
+     *
+     * @return the index of the record or -1 if the key is not in the file
+     */
+    int indexOf(long key) {
+      int low = 0;
+      int high = count - 1;
+      boolean bisect = false;
+      while (low <= high) {
+        long lowKey = keyAt(low);
+        long highKey = keyAt(high);
+        if (key < lowKey || key > highKey) {
+          return -1;
+        }
+        int mid;
+        if (bisect || highKey == lowKey) {
+          mid = low + (high - low) / 2;
+        } else {
+          mid = low + (int) ((double) (key - lowKey) / (highKey - lowKey) * (high - low));
+        }
+        int previousSize = high - low + 1;
+        long midKey = keyAt(mid);
+        if (midKey == key) {
+          return mid;
+        } else if (midKey < key) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+        bisect = !bisect && high - low + 1 > previousSize / 2;
+      }
+      return -1;
+    }
+  }
+
+  private final TowerFile base;
+  // Newest first
+  private final List<TowerFile> overlays;
+
+  private CellTowerDatabase(TowerFile base, List<TowerFile> overlays) {
+    this.base = base;
+    this.overlays = overlays;
+  }
+
+  /**
+   * Maps a database file and its overlays in memory.
+   *
+   * @param file base database file
+   * @param overlayFiles delta update files, oldest first
+   * @return the database
+   * @throws IOException if a file cannot be mapped or is not a valid database file
+   */
+  public static CellTowerDatabase open(File file, List<File> overlayFiles) throws IOException {
+    TowerFile base = map(file);
+    List<TowerFile> overlays = new ArrayList<>(overlayFiles.size());
+    for (int i = overlayFiles.size() - 1; i >= 0; i--) {
+      overlays.add(map(overlayFiles.get(i)));
+    }
+    return new CellTowerDatabase(base, overlays);
+  }
+
+  /**
+   * Looks up the tower serving a cell.
+   *
+   * @param cell cell info
+   * @return the tower or null if it is unknown
+   */
+  @Nullable
+  public Tower lookup(CellInfo cell) {
+    long key = getKey(cell);
+    return key != NO_KEY ? lookup(key) : null;
+  }
+
+  /**
+   * Looks up a tower by its packed key.
+   *
+   * @param key key built with packKey
+   * @return the tower or null if it is unknown or was deleted by an overlay
+   */
+  @Nullable
+  public Tower lookup(long key) {
+    for (TowerFile overlay : overlays) {
+      Tower tower = read(overlay, key);
+      if (tower != null) {
+        return tower.range >= 0 ? tower : null;
+      }
+    }
+    Tower tower = read(base, key);
+    return tower != null && tower.range >= 0 ? tower : null;
+  }
+
+  /**
+   * Packs a cell identity into a sortable key: 3 bits of radio type, 10 bits each of MCC and MNC
+   * and 40 bits of cell identity. GSM cells are identified by LAC and CID, WCDMA and LTE cells by
+   * their 28 bit CID/CI, which is unique within a network. CDMA cells store the SID in place of
+   * MCC and MNC and are identified by NID and BID.
+   *
+   * @return the key or NO_KEY if a field is out of range
+   */
+  public static long packKey(int radio, int mcc, int mnc, long identity) {
+    if (radio < 0 || radio > 7 || mcc < 0 || mcc > 1023 || mnc < 0 || mnc > 1023) {
+      return NO_KEY;
+    }
+    if (identity < 0 || identity >= (1L << 40)) {
+      return NO_KEY;
+    }
+    return ((long) radio << 60) | ((long) mcc << 50) | ((long) mnc << 40) | identity;
+  }
+
+  /**
+   * Builds the key of a cell.
+   *
+   * @param cell cell info
+   * @return the key or NO_KEY if the cell identity is incomplete
+   */
+  public static long getKey(CellInfo cell) {
+    if (cell instanceof CellInfoGsm) {
+      CellIdentityGsm id = ((CellInfoGsm) cell).getCellIdentity();
+      if (id.getLac() < 0 || id.getLac() > 0xFFFF || id.getCid() < 0 || id.getCid() > 0xFFFF) {
+        return NO_KEY;
+      }
+      return packKey(
+          RADIO_GSM, id.getMcc(), id.getMnc(), ((long) id.getLac() << 16) | id.getCid());
+    } else if (cell instanceof CellInfoWcdma) {
+      CellIdentityWcdma id = ((CellInfoWcdma) cell).getCellIdentity();
+      return packKey(RADIO_WCDMA, id.getMcc(), id.getMnc(), id.getCid());
+    } else if (cell instanceof CellInfoLte) {
+      CellIdentityLte id = ((CellInfoLte) cell).getCellIdentity();
+      return packKey(RADIO_LTE, id.getMcc(), id.getMnc(), id.getCi());
+    } else if (cell instanceof CellInfoCdma) {
+      CellIdentityCdma id = ((CellInfoCdma) cell).getCellIdentity();
+      int sid = id.getSystemId();
+      if (sid < 0
+          || sid > 0x7FFF
+          || id.getNetworkId() < 0
+          || id.getNetworkId() > 0xFFFF
+          || id.getBasestationId() < 0
+          || id.getBasestationId() > 0xFFFF) {
+        return NO_KEY;
+      }
+      return packKey(
+          RADIO_CDMA,
+          sid >> 10,
+          sid & 0x3FF,
+          ((long) id.getNetworkId() << 16) | id.getBasestationId());
+    }
+    return NO_KEY;
+  }
+
+  @Nullable
+  private static Tower read(TowerFile file, long key) {
+    int index = file.indexOf(key);
+    if (index < 0) {
+      return null;
+    }
+    int offset = HEADER_SIZE + index * RECORD_SIZE;
+    return new Tower(
+        file.buffer.getInt(offset + OFFSET_LATITUDE) / COORDINATE_SCALE,
+        file.buffer.getInt(offset + OFFSET_LONGITUDE) / COORDINATE_SCALE,
+        file.buffer.getInt(offset + OFFSET_RANGE));
+  }
+
+  private static TowerFile map(File file) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        FileChannel channel = randomAccessFile.getChannel()) {
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+        throw new IOException(String.format("Invalid tower database size %d", size));
+      }
+      // The mapping stays valid after the channel is closed
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      buffer.order(ByteOrder.BIG_ENDIAN);
+      int magic = buffer.getInt(0);
+      int version = buffer.getInt(4);
+      int recordSize = buffer.getInt(8);
+      int count = buffer.getInt(12);
+      if (magic != MAGIC || version != VERSION || recordSize != RECORD_SIZE) {
+        throw new IOException(String.format("Unsupported tower database %s", file.getPath()));
+      }
+      if (count < 0 || HEADER_SIZE + (long) count * RECORD_SIZE > size) {
+        throw new IOException(String.format("Truncated tower database %s", file.getPath()));
+      }
+      return new TowerFile(buffer, count);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan.utils;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import javax.annotation.Nullable;
+
+/** Reads optional values from the options maps passed by JS, where null means not set. */
+public class OptionsUtil {
+  /**
+   * Whether an option is set.
+   *
+   * @return true when the options have the key with a non-null value
+   */
+  public static boolean hasValue(@Nullable ReadableMap options, String key) {
+    return options != null && options.hasKey(key) && !options.isNull(key);
+  }
+
+  public static int getInt(@Nullable ReadableMap options, String key, int fallback) {
+    return hasValue(options, key) ? options.getInt(key) : fallback;
+  }
+
+  public static double getDouble(@Nullable ReadableMap options, String key, double fallback) {
+    return hasValue(options, key) ? options.getDouble(key) : fallback;
+  }
+
+  public static boolean getBoolean(@Nullable ReadableMap options, String key, boolean fallback) {
+    return hasValue(options, key) ? options.getBoolean(key) : fallback;
+  }
+
+  @Nullable
+  public static String getString(@Nullable ReadableMap options, String key) {
+    return hasValue(options, key) ? options.getString(key) : null;
+  }
+
+  @Nullable
+  public static ReadableArray getArray(@Nullable ReadableMap options, String key) {
+    return hasValue(options, key) ? options.getArray(key) : null;
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan.utils;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Fixed capacity ring buffer of signal samples stored as primitive columns, so memory stays
+ * constant however long a recording runs. Each record covers a time window and keeps the number of
+ * samples, min, max and sum of the serving cell and best Wi-Fi signal strengths in it. A raw
+ * sample is a window of one sample.
+ *
+ * <p>When the buffer is full it either downsamples, merging the oldest half of the records
+ * pairwise so older data is kept at a coarser resolution, or drops the oldest or the newest
+ * record.
+ */
+public class SampleRingBuffer {
+  public static final int POLICY_DOWNSAMPLE = 0;
+  public static final int POLICY_DROP_OLDEST = 1;
+  public static final int POLICY_DROP_NEWEST = 2;
+
+  /** Sentinel for a sample without a signal strength. */
+  public static final int NO_VALUE = Integer.MIN_VALUE;
+
+  private final int capacity;
+  private final int policy;
+
+  private final long[] startTimes;
+  private final long[] endTimes;
+  private final int[] samples;
+  private final int[] cellSamples;
+  private final int[] cellMin;
+  private final int[] cellMax;
+  private final long[] cellSum;
+  private final int[] cellCountMax;
+  private final int[] wifiSamples;
+  private final int[] wifiMin;
+  private final int[] wifiMax;
+  private final long[] wifiSum;
+  private final int[] wifiCountMax;
+
+  private int head;
+  private int size;
+  private long dropped;
+
+  public SampleRingBuffer(int capacity, int policy) {
+    // Downsampling merges pairs out of the oldest half, which needs at least four records
+    this.capacity = Math.max(4, capacity);
+    this.policy = policy;
+    startTimes = new long[this.capacity];
+    endTimes = new long[this.capacity];
+    samples = new int[this.capacity];
+    cellSamples = new int[this.capacity];
+    cellMin = new int[this.capacity];
+    cellMax = new int[this.capacity];
+    cellSum = new long[this.capacity];
+    cellCountMax = new int[this.capacity];
+    wifiSamples = new int[this.capacity];
+    wifiMin = new int[this.capacity];
+    wifiMax = new int[this.capacity];
+    wifiSum = new long[this.capacity];
+    wifiCountMax = new int[this.capacity];
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Appends a raw sample.
+   *
+   * @param timestamp time of the sample in milliseconds
+   * @param cellDbm serving cell signal strength or NO_VALUE
+   * @param cellCount number of cells seen
+   * @param wifiRssi strongest Wi-Fi signal strength or NO_VALUE
+   * @param wifiCount number of access points seen
+   */
+  public synchronized void add(
+      long timestamp, int cellDbm, int cellCount, int wifiRssi, int wifiCount) {
+    if (size == capacity) {
+      switch (policy) {
+        case POLICY_DROP_NEWEST:
+          dropped++;
+          return;
+        case POLICY_DROP_OLDEST:
+          head = slot(1);
+          size--;
+          dropped++;
+          break;
+        default:
+          downsample();
+          break;
+      }
+    }
+    int i = slot(size);
+    startTimes[i] = timestamp;
+    endTimes[i] = timestamp;
+    samples[i] = 1;
+    boolean hasCell = cellDbm != NO_VALUE;
+    cellSamples[i] = hasCell ? 1 : 0;
+    cellMin[i] = hasCell ? cellDbm : Integer.MAX_VALUE;
+    cellMax[i] = hasCell ? cellDbm : Integer.MIN_VALUE;
+    cellSum[i] = hasCell ? cellDbm : 0;
+    cellCountMax[i] = cellCount;
+    boolean hasWifi = wifiRssi != NO_VALUE;
+    wifiSamples[i] = hasWifi ? 1 : 0;
+    wifiMin[i] = hasWifi ? wifiRssi : Integer.MAX_VALUE;
+    wifiMax[i] = hasWifi ? wifiRssi : Integer.MIN_VALUE;
+    wifiSum[i] = hasWifi ? wifiRssi : 0;
+    wifiCountMax[i] = wifiCount;
+    size++;
+  }
+
+  /**
+   * Removes up to maxRecords of the oldest records and encodes them column by column.
+   *
+   * @param maxRecords maximum number of records to remove, all of them if not positive
+   * @return a map of arrays, one per column, plus the number of records dropped since last flush
+   */
+  public synchronized WritableMap flush(int maxRecords) {
+    int count = maxRecords > 0 ? Math.min(maxRecords, size) : size;
+    WritableArray startTimeColumn = Arguments.createArray();
+    WritableArray endTimeColumn = Arguments.createArray();
+    WritableArray samplesColumn = Arguments.createArray();
+    WritableArray cellMinColumn = Arguments.createArray();
+    WritableArray cellMaxColumn = Arguments.createArray();
+    WritableArray cellMeanColumn = Arguments.createArray();
+    WritableArray cellCountColumn = Arguments.createArray();
+    WritableArray wifiMinColumn = Arguments.createArray();
+    WritableArray wifiMaxColumn = Arguments.createArray();
+    WritableArray wifiMeanColumn = Arguments.createArray();
+    WritableArray wifiCountColumn = Arguments.createArray();
+    for (int n = 0; n < count; n++) {
+      int i = slot(n);
+      startTimeColumn.pushDouble(startTimes[i]);
+      endTimeColumn.pushDouble(endTimes[i]);
+      samplesColumn.pushInt(samples[i]);
+      if (cellSamples[i] > 0) {
+        cellMinColumn.pushInt(cellMin[i]);
+        cellMaxColumn.pushInt(cellMax[i]);
+        cellMeanColumn.pushDouble((double) cellSum[i] / cellSamples[i]);
+      } else {
+        cellMinColumn.pushNull();
+        cellMaxColumn.pushNull();
+        cellMeanColumn.pushNull();
+      }
+      cellCountColumn.pushInt(cellCountMax[i]);
+      if (wifiSamples[i] > 0) {
+        wifiMinColumn.pushInt(wifiMin[i]);
+        wifiMaxColumn.pushInt(wifiMax[i]);
+        wifiMeanColumn.pushDouble((double) wifiSum[i] / wifiSamples[i]);
+      } else {
+        wifiMinColumn.pushNull();
+        wifiMaxColumn.pushNull();
+        wifiMeanColumn.pushNull();
+      }
+      wifiCountColumn.pushInt(wifiCountMax[i]);
+    }
+    head = slot(count);
+    size -= count;
+
+    WritableMap map = Arguments.createMap();
+    map.putArray("startTime", startTimeColumn);
+    map.putArray("endTime", endTimeColumn);
+    map.putArray("samples", samplesColumn);
+    map.putArray("cellMin", cellMinColumn);
+    map.putArray("cellMax", cellMaxColumn);
+    map.putArray("cellMean", cellMeanColumn);
+    map.putArray("cellCount", cellCountColumn);
+    map.putArray("wifiMin", wifiMinColumn);
+    map.putArray("wifiMax", wifiMaxColumn);
+    map.putArray("wifiMean", wifiMeanColumn);
+    map.putArray("wifiCount", wifiCountColumn);
+    map.putDouble("dropped", dropped);
+    map.putInt("remaining", size);
+    dropped = 0;
+    return map;
+  }
+
+  /**
+   * Merges the oldest half of the records pairwise, in place, freeing a quarter of the buffer.
+   * Records are merged from the newest pair backwards so the merged block ends where the untouched
+   * newer half begins and no source record is overwritten before it is read.
+   */
+  private void downsample() {
+    int half = size / 2;
+    int merged = half / 2;
+    for (int j = merged - 1; j >= 0; j--) {
+      merge(slot(2 * j), slot(2 * j + 1), slot(merged + j));
+    }
+    head = slot(merged);
+    size -= merged;
+  }
+
+  private void merge(int a, int b, int dst) {
+    startTimes[dst] = startTimes[a];
+    endTimes[dst] = endTimes[b];
+    samples[dst] = samples[a] + samples[b];
+    cellSamples[dst] = cellSamples[a] + cellSamples[b];
+    cellMin[dst] = Math.min(cellMin[a], cellMin[b]);
+    cellMax[dst] = Math.max(cellMax[a], cellMax[b]);
+    cellSum[dst] = cellSum[a] + cellSum[b];
+    cellCountMax[dst] = Math.max(cellCountMax[a], cellCountMax[b]);
+    wifiSamples[dst] = wifiSamples[a] + wifiSamples[b];
+    wifiMin[dst] = Math.min(wifiMin[a], wifiMin[b]);
+    wifiMax[dst] = Math.max(wifiMax[a], wifiMax[b]);
+    wifiSum[dst] = wifiSum[a] + wifiSum[b];
+    wifiCountMax[dst] = Math.max(wifiCountMax[a], wifiCountMax[b]);
+  }
+
+  private int slot(int index) {
+    return (head + index) % capacity;
+  }
+}
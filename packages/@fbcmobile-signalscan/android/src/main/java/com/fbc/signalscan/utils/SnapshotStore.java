@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ * All rights reserved.
+ *
+ * This source code is licensed under the BSD-style license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.fbc.signalscan.utils;
+
+import android.os.AsyncTask;
+import android.util.Log;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Persists the last successful scan results to a binary file so they can be served right away
+ * after a cold start, while a fresh scan is running.
+ *
+ * <p>The file is a header (magic, version, layout of the records, capture time and record count)
+ * followed by the records, each written by the codec with a fixed field layout, so field names and
+ * value types are not repeated per record.
+ */
+public class SnapshotStore<T> {
+  private static final String TAG = "SnapshotStore";
+
+  private static final int MAGIC = 0x46424353; // "FBCS"
+  private static final byte VERSION = 2;
+
+  /** Writes and reads records of one kind with a fixed field layout. */
+  public interface RecordCodec<T> {
+    /** Identifies the field layout, changed whenever fields are added, removed or reordered. */
+    int getLayout();
+
+    void write(DataOutputStream out, T record) throws IOException;
+
+    T read(DataInputStream in) throws IOException;
+
+    /** Adds the record to the results sent to JS, as the live scan would have. */
+    void put(WritableMap results, int index, T record);
+  }
+
+  /** Scan results along with the time they were captured. */
+  public static class Snapshot<T> {
+    public final List<T> records;
+    public final long timestamp;
+    public final boolean restored;
+    private final RecordCodec<T> codec;
+
+    Snapshot(List<T> records, long timestamp, boolean restored, RecordCodec<T> codec) {
+      this.records = records;
+      this.timestamp = timestamp;
+      this.restored = restored;
+      this.codec = codec;
+    }
+
+    /**
+     * Encodes the snapshot for JS.
+     *
+     * @return a map with the results, the capture timestamp, the age in milliseconds and whether
+     *     the snapshot was restored from disk
+     */
+    public WritableMap toWritableMap() {
+      WritableMap results = Arguments.createMap();
+      for (int i = 0; i < records.size(); i++) {
+        codec.put(results, i, records.get(i));
+      }
+      WritableMap map = Arguments.createMap();
+      map.putBoolean("restored", restored);
+      map.putDouble("timestamp", timestamp);
+      map.putDouble("age", Math.max(0, System.currentTimeMillis() - timestamp));
+      map.putMap("results", results);
+      return map;
+    }
+  }
+
+  private final File file;
+  private final RecordCodec<T> codec;
+  private final Object lock = new Object();
+  @Nullable private Snapshot<T> snapshot;
+  private boolean loaded;
+
+  public SnapshotStore(File file, RecordCodec<T> codec) {
+    this.file = file;
+    this.codec = codec;
+  }
+
+  /**
+   * Keeps the records in memory and writes them to disk in the background.
+   *
+   * @param records scan results, which must not be modified afterwards
+   * @param timestamp wall clock time in milliseconds the results were captured at, which may be
+   *     well before they were handed to the store
+   */
+  public void save(List<T> records, long timestamp) {
+    final Snapshot<T> current =
+        new Snapshot<>(Collections.unmodifiableList(records), timestamp, false, codec);
+    synchronized (lock) {
+      snapshot = current;
+      loaded = true;
+    }
+    AsyncTask.SERIAL_EXECUTOR.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            write(current);
+          }
+        });
+  }
+
+  /**
+   * Gets the last known snapshot. The file is only read the first time this is called and only if
+   * no scan completed since the module was created.
+   *
+   * @return the last known snapshot or null if there is none.
+   */
+  @Nullable
+  public Snapshot<T> get() {
+    synchronized (lock) {
+      if (!loaded) {
+        snapshot = read();
+        loaded = true;
+      }
+      return snapshot;
+    }
+  }
+
+  private void write(Snapshot<T> current) {
+    File tmpFile = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeInt(codec.getLayout());
+      out.writeLong(current.timestamp);
+      out.writeInt(current.records.size());
+      for (T record : current.records) {
+        codec.write(out, record);
+      }
+    } catch (IOException ex) {
+      Log.e(TAG, "Failed to write snapshot", ex);
+      tmpFile.delete();
+      return;
+    }
+    if (!tmpFile.renameTo(file)) {
+      Log.d(TAG, String.format("Failed to rename snapshot to %s", file.getPath()));
+      tmpFile.delete();
+    }
+  }
+
+  @Nullable
+  private Snapshot<T> read() {
+    if (!file.exists()) {
+      return null;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readByte() != VERSION || in.readInt() != codec.getLayout()) {
+        Log.d(TAG, "Ignoring snapshot with unknown format");
+        return null;
+      }
+      long timestamp = in.readLong();
+      int count = in.readInt();
+      if (count < 0) {
+        throw new IOException(String.format("Invalid record count %d", count));
+      }
+      List<T> records = new ArrayList<>(Math.min(count, 1024));
+      for (int i = 0; i < count; i++) {
+        records.add(codec.read(in));
+      }
+      return new Snapshot<>(Collections.unmodifiableList(records), timestamp, true, codec);
+    } catch (IOException ex) {
+      Log.e(TAG, "Failed to read snapshot", ex);
+      return null;
+    }
+  }
+}
@@ -12,6 +12,13 @@
 'use strict';
 
 import CellScanModule from '@fbcmobile/signalscan/NativeCellScanModule';
+import DriveTestRecorderModule from '@fbcmobile/signalscan/NativeDriveTestRecorderModule';
+import RadioSnapshotModule from '@fbcmobile/signalscan/NativeRadioSnapshotModule';
 import WiFiScanModule from '@fbcmobile/signalscan/NativeWiFiScanModule';
 
-export {CellScanModule, WiFiScanModule};
+export {
+  CellScanModule,
+  DriveTestRecorderModule,
+  RadioSnapshotModule,
+  WiFiScanModule,
+};